@@ -0,0 +1,133 @@
+package ch.uzh.ifi.hase.soprafs21.controller;
+
+import ch.uzh.ifi.hase.soprafs21.Application;
+import ch.uzh.ifi.hase.soprafs21.entity.User;
+import ch.uzh.ifi.hase.soprafs21.service.UserService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+
+/**
+ * UserControllerBenchmark
+ * Measures full MockMvc round trips through the UserController, including the service, the in-memory H2
+ * datasource, the DTOMapper and the JSON (de)serialization.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserControllerBenchmark {
+
+    private static final int SEEDED_USERS = 200;
+
+    private final AtomicLong userCounter = new AtomicLong();
+
+    private ConfigurableApplicationContext context;
+
+    private MockMvc mockMvc;
+
+    private String token;
+
+    private Long userId;
+
+    // the ids of all seeded users, a lobby of SEEDED_USERS users
+    private List<Long> lobbyIds;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        context = new SpringApplicationBuilder(Application.class)
+                .properties("server.port=0", "management.server.port=0", "logging.level.root=WARN",
+                        "soprafs21.rate-limit.enabled=false")
+                .run();
+        mockMvc = MockMvcBuilders.webAppContextSetup((WebApplicationContext) context).build();
+
+        UserService userService = context.getBean(UserService.class);
+        List<User> users = new ArrayList<>(SEEDED_USERS);
+        for (int i = 0; i < SEEDED_USERS; i++) {
+            User user = new User();
+            user.setUsername("seededUser" + i);
+            user.setPassword("password");
+            users.add(user);
+        }
+        List<User> createdUsers = userService.createUsers(users);
+        lobbyIds = new ArrayList<>(SEEDED_USERS);
+        for (User user : createdUsers) {
+            lobbyIds.add(user.getId());
+        }
+        User benchmarkUser = createdUsers.get(0);
+        token = benchmarkUser.getToken();
+        userId = benchmarkUser.getId();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public MvcResult getUsers() throws Exception {
+        return mockMvc.perform(get("/users").header("token", token)).andReturn();
+    }
+
+    @Benchmark
+    public MvcResult getUserWithId() throws Exception {
+        return mockMvc.perform(get("/users/{id}", userId).header("token", token)).andReturn();
+    }
+
+    // a lobby read one user at a time, as the frontend did before GET /users?ids=
+    @Benchmark
+    public MvcResult getLobbyUserByUser() throws Exception {
+        MvcResult result = null;
+        for (Long id : lobbyIds) {
+            result = mockMvc.perform(get("/users/{id}", id).header("token", token)).andReturn();
+        }
+        return result;
+    }
+
+    @Benchmark
+    public MvcResult getLobbyWithIds() throws Exception {
+        return mockMvc.perform(get("/users").param("ids", lobbyIds.stream().map(String::valueOf).toArray(String[]::new))
+                .header("token", token)).andReturn();
+    }
+
+    @Benchmark
+    public MvcResult createUser() throws Exception {
+        return mockMvc.perform(post("/users")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"username\":\"user" + userCounter.incrementAndGet() + "\",\"password\":\"password\"}"))
+                .andReturn();
+    }
+
+    @Benchmark
+    public MvcResult loginUser() throws Exception {
+        return mockMvc.perform(put("/users")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"username\":\"seededUser0\",\"password\":\"password\"}"))
+                .andReturn();
+    }
+
+    @Benchmark
+    public MvcResult modifyUser() throws Exception {
+        return mockMvc.perform(post("/users/{id}", userId)
+                .header("token", token)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"username\":\"seededUser0\",\"birthdate\":\"1990-01-01\"}"))
+                .andReturn();
+    }
+}
@@ -0,0 +1,90 @@
+package ch.uzh.ifi.hase.soprafs21.controller;
+
+import ch.uzh.ifi.hase.soprafs21.Application;
+import ch.uzh.ifi.hase.soprafs21.entity.User;
+import ch.uzh.ifi.hase.soprafs21.service.ReactiveUserService;
+import ch.uzh.ifi.hase.soprafs21.service.UserService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * UserControllerThreadingBenchmark
+ * Compares Tomcat's platform worker pool with virtual threads (soprafs21.threads.virtual) and with the reactive
+ * profile (WebFlux on Netty, R2DBC) at high concurrency. Unlike UserControllerBenchmark the requests go over real
+ * HTTP connections; with more client threads than pool workers the platform variant has to queue requests.
+ * Run with -prof gc to compare the allocations per request, the servers run inside the benchmark JVM.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(256)
+@Fork(1)
+public class UserControllerThreadingBenchmark {
+
+    private static final int SEEDED_USERS = 200;
+
+    @Param({"platform", "virtual", "reactive"})
+    public String stack;
+
+    private ConfigurableApplicationContext context;
+
+    private HttpClient httpClient;
+
+    private HttpRequest getUsersRequest;
+
+    private HttpRequest getUserWithIdRequest;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        context = new SpringApplicationBuilder(Application.class)
+                .properties("server.port=0", "management.server.port=0", "logging.level.root=WARN",
+                        "soprafs21.rate-limit.enabled=false",
+                        "soprafs21.threads.virtual=" + "virtual".equals(stack))
+                .profiles("reactive".equals(stack) ? new String[]{"reactive"} : new String[0])
+                .run();
+        String baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+
+        List<User> users = new ArrayList<>(SEEDED_USERS);
+        for (int i = 0; i < SEEDED_USERS; i++) {
+            User user = new User();
+            user.setUsername("seededUser" + i);
+            user.setPassword("password");
+            users.add(user);
+        }
+        User benchmarkUser = "reactive".equals(stack)
+                ? context.getBean(ReactiveUserService.class).createUsers(users).block().get(0)
+                : context.getBean(UserService.class).createUsers(users).get(0);
+
+        httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        getUsersRequest = HttpRequest.newBuilder(URI.create(baseUrl + "/users?limit=20"))
+                .header("token", benchmarkUser.getToken()).build();
+        getUserWithIdRequest = HttpRequest.newBuilder(URI.create(baseUrl + "/users/" + benchmarkUser.getId()))
+                .header("token", benchmarkUser.getToken()).build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public int getUsers() throws Exception {
+        return httpClient.send(getUsersRequest, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    @Benchmark
+    public int getUserWithId() throws Exception {
+        return httpClient.send(getUserWithIdRequest, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+}
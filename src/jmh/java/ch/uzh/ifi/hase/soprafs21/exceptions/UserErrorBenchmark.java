@@ -0,0 +1,60 @@
+package ch.uzh.ifi.hase.soprafs21.exceptions;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * UserErrorBenchmark
+ * Measures the cost of a rejection: throwing a new ResponseStatusException (as the UserService did for every wrong
+ * token and unknown id) against throwing the preallocated exception of a UserError, each from depth frames below the
+ * catch. A request to the UserController runs about 100 frames deep below Tomcat's worker loop, and a new exception
+ * fills in every one of them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserErrorBenchmark {
+
+    @Param({"10", "100"})
+    public int depth;
+
+    @Benchmark
+    public HttpStatus newResponseStatusException() {
+        try {
+            return rejectWithNewException(depth);
+        }
+        catch (ResponseStatusException e) {
+            return e.getStatus();
+        }
+    }
+
+    @Benchmark
+    public HttpStatus userError() {
+        try {
+            return rejectWithUserError(depth);
+        }
+        catch (ResponseStatusException e) {
+            return e.getStatus();
+        }
+    }
+
+    private static HttpStatus rejectWithNewException(int depth) {
+        if (depth == 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Token could not be authenticated");
+        }
+        return rejectWithNewException(depth - 1);
+    }
+
+    private static HttpStatus rejectWithUserError(int depth) {
+        if (depth == 0) {
+            throw UserError.TOKEN_INVALID.exception();
+        }
+        return rejectWithUserError(depth - 1);
+    }
+}
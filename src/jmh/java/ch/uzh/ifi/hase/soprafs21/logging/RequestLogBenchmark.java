@@ -0,0 +1,63 @@
+package ch.uzh.ifi.hase.soprafs21.logging;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RequestLogBenchmark
+ * Measures what logging a token check costs 8 concurrent request threads: a println to a PrintStream like
+ * System.out (the behavior before the RequestLog, every thread takes the lock of the stream), the RequestLog, and the
+ * RequestLog sampling 1% of the token checks. The output is discarded, so the println is measured without the write
+ * to the console itself and is a lower bound of its cost.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class RequestLogBenchmark {
+
+    private static final String TOKEN = "7c9e6679-7425-40de-944b-e07fc1f90ae7";
+
+    private PrintStream out;
+
+    private RequestLog requestLog;
+
+    private RequestLog sampledRequestLog;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        out = new PrintStream(OutputStream.nullOutputStream(), true);
+        requestLog = new RequestLog(8192, List.of(), line -> { });
+        sampledRequestLog = new RequestLog(8192, List.of("token.check=0.01"), line -> { });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        requestLog.destroy();
+        sampledRequestLog.destroy();
+        // the events the writer could not keep up with
+        System.out.printf("%nwritten: %d, dropped: %d%n", requestLog.getWrittenCount(), requestLog.getDroppedCount());
+    }
+
+    @Benchmark
+    public void println() {
+        out.println("token: " + TOKEN);
+    }
+
+    @Benchmark
+    public void requestLog() {
+        requestLog.log("token.check", "token", TOKEN, "result", "found");
+    }
+
+    @Benchmark
+    public void requestLogSampled() {
+        sampledRequestLog.log("token.check", "token", TOKEN, "result", "found");
+    }
+}
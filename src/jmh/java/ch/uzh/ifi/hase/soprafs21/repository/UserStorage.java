@@ -0,0 +1,48 @@
+package ch.uzh.ifi.hase.soprafs21.repository;
+
+import ch.uzh.ifi.hase.soprafs21.Application;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.nio.file.Path;
+
+/**
+ * Starts the application (without a web server) on one of the storage modes of the storage benchmarks:
+ * memory (the default in-memory database), durable (H2 files, the default write delay) and durable-sync
+ * (H2 files, every commit written before it returns).
+ */
+final class UserStorage {
+
+    private UserStorage() {
+    }
+
+    static ConfigurableApplicationContext start(String storage, Path directory) {
+        SpringApplicationBuilder builder = new SpringApplicationBuilder(Application.class)
+                .web(WebApplicationType.NONE)
+                .properties("logging.level.root=WARN", "soprafs21.storage.directory=" + directory,
+                        // no snapshot while measuring
+                        "soprafs21.storage.snapshot-interval-ms=" + Long.MAX_VALUE);
+        if ("durable-sync".equals(storage)) {
+            builder.properties("soprafs21.storage.write-delay-ms=0");
+        }
+        if (!"memory".equals(storage)) {
+            builder.profiles("durable");
+        }
+        return builder.run();
+    }
+
+    /**
+     * Inserts the given number of users with a single INSERT ... SELECT, which is as fast as H2 can write them.
+     * All users have the same (BCrypt) password hash.
+     */
+    static void seed(ConfigurableApplicationContext context, int users) {
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        jdbcTemplate.update("insert into \"USER\" (id, username, token, password, status, creation_date, version) "
+                + "select x, 'seededUser' || x, random_uuid(), '$2a$10$7EqJtq98hPqEX7fNZaFWoOhi5BWX4Z3o8Du5d1fhFfXg0/s3PNyGe', 1, "
+                + "current_date, 0 from system_range(1, ?)", users);
+        // the ids of the users created later continue after the seeded ones
+        jdbcTemplate.execute("alter sequence USER_SEQUENCE restart with " + (users + 1000));
+    }
+}
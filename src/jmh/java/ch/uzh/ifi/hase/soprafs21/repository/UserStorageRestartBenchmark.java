@@ -0,0 +1,65 @@
+package ch.uzh.ifi.hase.soprafs21.repository;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * UserStorageRestartBenchmark
+ * Measures how long a restart takes until a million users are available again. With the durable profile the users are
+ * already in the database files, the in-memory database has to be filled again: here with a single INSERT ... SELECT,
+ * a lower bound for any real reload (in production, the users would have to register again).
+ * Each iteration is one restart (start of the application context, including the startup of the PresenceRegistry and
+ * the UsernameFilter, which read the users).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+public class UserStorageRestartBenchmark {
+
+    private static final int USERS = 1_000_000;
+
+    @Param({"memory", "durable"})
+    public String storage;
+
+    private Path directory;
+
+    private ConfigurableApplicationContext context;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("soprafs21-storage");
+        if (!"memory".equals(storage)) {
+            try (ConfigurableApplicationContext seedContext = UserStorage.start(storage, directory)) {
+                UserStorage.seed(seedContext, USERS);
+            }
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void stop() {
+        context.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public ConfigurableApplicationContext restart() {
+        context = UserStorage.start(storage, directory);
+        if ("memory".equals(storage)) {
+            UserStorage.seed(context, USERS);
+        }
+        return context;
+    }
+}
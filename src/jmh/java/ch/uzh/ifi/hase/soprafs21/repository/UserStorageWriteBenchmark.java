@@ -0,0 +1,73 @@
+package ch.uzh.ifi.hase.soprafs21.repository;
+
+import ch.uzh.ifi.hase.soprafs21.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs21.entity.User;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * UserStorageWriteBenchmark
+ * Measures the steady-state write throughput of the storage modes: one committed transaction per inserted user,
+ * from several threads, on top of 100000 seeded users. The password is already hashed, only the storage is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class UserStorageWriteBenchmark {
+
+    private static final int SEEDED_USERS = 100_000;
+
+    @Param({"memory", "durable", "durable-sync"})
+    public String storage;
+
+    private final AtomicLong userCounter = new AtomicLong();
+
+    private Path directory;
+
+    private ConfigurableApplicationContext context;
+
+    private UserRepository userRepository;
+
+    private TransactionTemplate transactionTemplate;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("soprafs21-storage");
+        context = UserStorage.start(storage, directory);
+        UserStorage.seed(context, SEEDED_USERS);
+        userRepository = context.getBean(UserRepository.class);
+        transactionTemplate = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        context.close();
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public User createUser() {
+        User user = new User();
+        user.setUsername("user" + userCounter.incrementAndGet());
+        user.setPassword("$2a$10$7EqJtq98hPqEX7fNZaFWoOhi5BWX4Z3o8Du5d1fhFfXg0/s3PNyGe");
+        user.setToken(UUID.randomUUID().toString());
+        user.setStatus(UserStatus.OFFLINE);
+        user.setCreationDate(LocalDate.now());
+        return transactionTemplate.execute(transaction -> userRepository.save(user));
+    }
+}
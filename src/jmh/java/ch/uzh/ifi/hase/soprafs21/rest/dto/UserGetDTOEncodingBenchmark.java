@@ -0,0 +1,106 @@
+package ch.uzh.ifi.hase.soprafs21.rest.dto;
+
+import ch.uzh.ifi.hase.soprafs21.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs21.entity.User;
+import ch.uzh.ifi.hase.soprafs21.rest.mapper.UserJsonWriter;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * UserGetDTOEncodingBenchmark
+ * Compares the encodings that GET /users negotiates through the Accept header: JSON, gzip compressed JSON, CBOR and Smile.
+ * The payload size of each encoding is printed once per fork, the benchmark measures the CPU time of encoding a page.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserGetDTOEncodingBenchmark {
+
+    @Param({"json", "json-gzip", "cbor", "smile"})
+    private String format;
+
+    @Param({"100", "10000"})
+    private int size;
+
+    private JsonSerializable users;
+
+    private ObjectWriter writer;
+
+    private boolean gzip;
+
+    @Setup
+    public void setup() throws IOException {
+        JsonFactory factory;
+        switch (format) {
+            case "cbor":
+                factory = new CBORFactory();
+                break;
+            case "smile":
+                factory = new SmileFactory();
+                break;
+            default:
+                factory = new JsonFactory();
+        }
+        gzip = format.endsWith("-gzip");
+        writer = Jackson2ObjectMapperBuilder.json()
+                .factory(factory)
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .filters(new SimpleFilterProvider().addFilter(UserGetDTO.FIELDS_FILTER, SimpleBeanPropertyFilter.serializeAll()))
+                .build()
+                .writerFor(JsonSerializable.class);
+
+        List<User> userList = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            User user = new User();
+            user.setId((long) i);
+            user.setUsername("username" + i);
+            user.setPassword("$2a$10$" + String.format("%053d", i));
+            user.setToken("c0a80101-0000-4000-8000-" + String.format("%012d", i));
+            user.setStatus(i % 2 == 0 ? UserStatus.ONLINE : UserStatus.OFFLINE);
+            user.setCreationDate(LocalDate.of(2021, 3, 1));
+            user.setBirthdate(LocalDate.of(1990, 1, 1).plusDays(i));
+            userList.add(user);
+        }
+        users = UserJsonWriter.users(userList);
+
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        encode(payload);
+        System.out.printf("%n%s, %d users: %d bytes%n", format, size, payload.size());
+    }
+
+    @Benchmark
+    public void encode() throws IOException {
+        encode(OutputStream.nullOutputStream());
+    }
+
+    private void encode(OutputStream out) throws IOException {
+        if (gzip) {
+            try (GZIPOutputStream gzipOut = new GZIPOutputStream(out)) {
+                writer.writeValue(gzipOut, users);
+            }
+        }
+        else {
+            writer.writeValue(out, users);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package ch.uzh.ifi.hase.soprafs21.rest.dto;
+
+import ch.uzh.ifi.hase.soprafs21.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs21.entity.User;
+import ch.uzh.ifi.hase.soprafs21.rest.mapper.DTOMapper;
+import ch.uzh.ifi.hase.soprafs21.rest.mapper.UserJsonWriter;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * UserGetDTOSerializationBenchmark
+ * Measures the Jackson serialization of UserGetDTO lists of different sizes, as done for the GET /users response.
+ * The ObjectMapper is configured like the one of the application (java.time support, dates as ISO strings).
+ * The mapAndSerialize benchmarks compare the DTOMapper + Jackson path with the UserJsonWriter that writes the users directly,
+ * run them with -PjmhProfilers=gc and divide gc.alloc.rate.norm by the size to get the allocation per user.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserGetDTOSerializationBenchmark {
+
+    @Param({"1", "100", "10000"})
+    private int size;
+
+    private List<UserGetDTO> userGetDTOs;
+
+    private List<User> users;
+
+    private ObjectWriter writer;
+
+    private ObjectWriter jsonSerializableWriter;
+
+    @Setup
+    public void setup() {
+        writer = Jackson2ObjectMapperBuilder.json()
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .filters(new SimpleFilterProvider().addFilter(UserGetDTO.FIELDS_FILTER, SimpleBeanPropertyFilter.serializeAll()))
+                .build()
+                .writerFor(new TypeReference<List<UserGetDTO>>() {});
+        jsonSerializableWriter = writer.forType(JsonSerializable.class);
+
+        users = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            User user = new User();
+            user.setId((long) i);
+            user.setUsername("username" + i);
+            user.setPassword("password");
+            user.setToken("c0a80101-0000-4000-8000-" + String.format("%012d", i));
+            user.setStatus(i % 2 == 0 ? UserStatus.ONLINE : UserStatus.OFFLINE);
+            user.setCreationDate(LocalDate.of(2021, 3, 1));
+            user.setBirthdate(LocalDate.of(1990, 1, 1).plusDays(i));
+            users.add(user);
+        }
+        userGetDTOs = toUserGetDTOs();
+    }
+
+    private List<UserGetDTO> toUserGetDTOs() {
+        List<UserGetDTO> result = new ArrayList<>(users.size());
+        for (User user : users) {
+            result.add(DTOMapper.INSTANCE.convertEntityToUserGetDTO(user));
+        }
+        return result;
+    }
+
+    @Benchmark
+    public void serializeList() throws IOException {
+        writer.writeValue(OutputStream.nullOutputStream(), userGetDTOs);
+    }
+
+    @Benchmark
+    public byte[] serializeListToBytes() throws IOException {
+        return writer.writeValueAsBytes(userGetDTOs);
+    }
+
+    // GET /users before: a UserGetDTO per user, serialized by Jackson
+    @Benchmark
+    public void mapAndSerializeList() throws IOException {
+        writer.writeValue(OutputStream.nullOutputStream(), toUserGetDTOs());
+    }
+
+    // GET /users now: the users written directly by the UserJsonWriter
+    @Benchmark
+    public void mapAndSerializeListDirect() throws IOException {
+        jsonSerializableWriter.writeValue(OutputStream.nullOutputStream(), UserJsonWriter.users(users));
+    }
+}
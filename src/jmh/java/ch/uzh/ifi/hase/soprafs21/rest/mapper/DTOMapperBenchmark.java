@@ -0,0 +1,54 @@
+package ch.uzh.ifi.hase.soprafs21.rest.mapper;
+
+import ch.uzh.ifi.hase.soprafs21.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs21.entity.User;
+import ch.uzh.ifi.hase.soprafs21.rest.dto.UserGetDTO;
+import ch.uzh.ifi.hase.soprafs21.rest.dto.UserPostDTO;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DTOMapperBenchmark
+ * Measures the mapping between the internal and the external/API representation of a user.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DTOMapperBenchmark {
+
+    private User user;
+
+    private UserPostDTO userPostDTO;
+
+    @Setup
+    public void setup() {
+        user = new User();
+        user.setId(1L);
+        user.setUsername("firstname@lastname");
+        user.setPassword("password");
+        user.setToken("c0a80101-0000-4000-8000-000000000001");
+        user.setStatus(UserStatus.ONLINE);
+        user.setCreationDate(LocalDate.of(2021, 3, 1));
+        user.setBirthdate(LocalDate.of(1990, 1, 1));
+
+        userPostDTO = new UserPostDTO();
+        userPostDTO.setUsername("firstname@lastname");
+        userPostDTO.setPassword("password");
+        userPostDTO.setBirthdate(LocalDate.of(1990, 1, 1));
+    }
+
+    @Benchmark
+    public UserGetDTO convertEntityToUserGetDTO() {
+        return DTOMapper.INSTANCE.convertEntityToUserGetDTO(user);
+    }
+
+    @Benchmark
+    public User convertUserPostDTOtoEntity() {
+        return DTOMapper.INSTANCE.convertUserPostDTOtoEntity(userPostDTO);
+    }
+}
@@ -0,0 +1,97 @@
+package ch.uzh.ifi.hase.soprafs21.service;
+
+import ch.uzh.ifi.hase.soprafs21.Application;
+import ch.uzh.ifi.hase.soprafs21.entity.User;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * UserServiceBenchmark
+ * Measures the UserService hot paths against the in-memory H2 datasource of the application.
+ * The application context is started once per fork without a web server.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserServiceBenchmark {
+
+    private static final String PASSWORD = "benchmarkPassword";
+
+    private final AtomicLong userCounter = new AtomicLong();
+
+    private ConfigurableApplicationContext context;
+
+    private UserService userService;
+
+    private TokenCache tokenCache;
+
+    private String token;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        context = new SpringApplicationBuilder(Application.class)
+                .web(WebApplicationType.NONE)
+                .properties("logging.level.root=WARN")
+                .run();
+        userService = context.getBean(UserService.class);
+        tokenCache = context.getBean(TokenCache.class);
+
+        token = userService.createUser(newUser("benchmarkUser")).getToken();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public boolean authenticateToken() {
+        return userService.authenticateToken(token);
+    }
+
+    @Benchmark
+    public boolean authenticateTokenUncached() {
+        tokenCache.invalidate(token);
+        return userService.authenticateToken(token);
+    }
+
+    // the whole rejection of a wrong token: the lookup, the error and the transaction rollback
+    @Benchmark
+    public boolean authenticateTokenRejected() {
+        try {
+            return userService.authenticateToken("wrongToken");
+        }
+        catch (ResponseStatusException e) {
+            return false;
+        }
+    }
+
+    @Benchmark
+    public User createUser() {
+        return userService.createUser(newUser("user" + userCounter.incrementAndGet()));
+    }
+
+    @Benchmark
+    public User checkIfCredentialsExist() {
+        User userInput = new User();
+        userInput.setUsername("benchmarkUser");
+        userInput.setPassword(PASSWORD);
+        return userService.checkIfCredentialsExist(userInput);
+    }
+
+    private static User newUser(String username) {
+        User user = new User();
+        user.setUsername(username);
+        user.setPassword(PASSWORD);
+        return user;
+    }
+}
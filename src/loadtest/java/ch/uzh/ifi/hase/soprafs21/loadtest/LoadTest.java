@@ -0,0 +1,329 @@
+package ch.uzh.ifi.hase.soprafs21.loadtest;
+
+import ch.uzh.ifi.hase.soprafs21.Application;
+import ch.uzh.ifi.hase.soprafs21.entity.User;
+import ch.uzh.ifi.hase.soprafs21.service.UserService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load Test
+ * Started with ./gradlew loadTest: boots the Application on a random port with the in-memory H2 database, seeds the
+ * users and lets concurrency clients send a weighted mix of the UserController requests for the given duration. Each
+ * client sends its next request as soon as the previous one is answered, so the latencies are the ones at the
+ * throughput the server reaches, not at a fixed arrival rate. The requests of the warmup are not measured.
+ * The results are compared to the baseline file (see LoadTestReport); a regression fails the task, and so does a
+ * client that aborted, e.g. because the connection failed or its user could not log in.
+ *
+ * Arguments (all optional, --name=value): users, concurrency, duration and warmup (seconds), mix
+ * (operation=weight,...), baseline (file), tolerance (share, e.g. 0.2), update-baseline (true to store the results
+ * as the new baseline), results (directory) and any further --spring.property=value for the application.
+ */
+public final class LoadTest {
+
+    private static final String PASSWORD = "loadTestPassword";
+
+    private static final String DEFAULT_MIX = "register=1,login=1,list=4,get=10,modify=2,logout=1";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final HttpClient httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+    private final String baseUrl;
+
+    private final List<User> seededUsers;
+
+    // the token of the lists and gets, of a user that no client logs out
+    private final String readToken;
+
+    private final Operation[] mix;
+
+    // the clients that aborted before the end of the run, their requests are missing from the results
+    private int abortedClients;
+
+    private LoadTest(String baseUrl, List<User> seededUsers, Operation[] mix) {
+        this.baseUrl = baseUrl;
+        this.seededUsers = seededUsers;
+        this.readToken = seededUsers.get(0).getToken();
+        this.mix = mix;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        List<String> applicationArgs = new ArrayList<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("The argument " + arg + " is not of the form --<name>=<value>");
+            }
+            String name = arg.substring(2, separator);
+            if (name.contains(".")) {
+                applicationArgs.add(arg);
+            }
+            else {
+                options.put(name, arg.substring(separator + 1));
+            }
+        }
+        int users = Integer.parseInt(options.getOrDefault("users", "1000"));
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "32"));
+        long durationSeconds = Long.parseLong(options.getOrDefault("duration", "30"));
+        long warmupSeconds = Long.parseLong(options.getOrDefault("warmup", "10"));
+        String mix = options.getOrDefault("mix", DEFAULT_MIX);
+        // every client modifies and logs out a seeded user of its own, the first user is the one of the reads
+        if (users <= concurrency || concurrency <= 0 || durationSeconds <= 0 || warmupSeconds < 0) {
+            throw new IllegalArgumentException("The load test needs a positive concurrency and duration and more users than clients");
+        }
+
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(Application.class)
+                .properties("server.port=0", "management.server.port=0", "logging.level.root=WARN",
+                        "soprafs21.rate-limit.enabled=false")
+                .run(applicationArgs.toArray(new String[0]));
+        int exitCode;
+        try {
+            String baseUrl = "http://localhost:" + context.getEnvironment().getRequiredProperty("local.server.port");
+            System.out.printf("Seeding %d users%n", users);
+            LoadTest loadTest = new LoadTest(baseUrl, seed(context.getBean(UserService.class), users), parseMix(mix));
+
+            System.out.printf("%d clients, %ds warmup, %ds measured, mix %s%n", concurrency, warmupSeconds, durationSeconds, mix);
+            Map<Operation, Recording> recordings = loadTest.run(concurrency, warmupSeconds, durationSeconds);
+            if (loadTest.abortedClients > 0) {
+                System.out.printf("%d of %d clients aborted, the results are incomplete%n", loadTest.abortedClients, concurrency);
+            }
+
+            String settings = String.format("users=%d concurrency=%d duration=%d mix=%s %s",
+                    users, concurrency, durationSeconds, mix, String.join(" ", applicationArgs)).trim();
+            LoadTestReport report = new LoadTestReport(settings, recordings, durationSeconds);
+            report.print(System.out);
+            report.write(Path.of(options.getOrDefault("results", "build/reports/loadtest")));
+            Path baseline = Path.of(options.getOrDefault("baseline", "loadtest-baseline.properties"));
+            if (loadTest.abortedClients > 0) {
+                // incomplete results are neither compared to nor stored as the baseline
+                exitCode = 1;
+            }
+            else if (Boolean.parseBoolean(options.getOrDefault("update-baseline", "false"))) {
+                report.writeBaseline(baseline);
+                System.out.printf("Stored the results as the baseline %s%n", baseline);
+                exitCode = 0;
+            }
+            else {
+                boolean passed = report.compareTo(baseline, Double.parseDouble(options.getOrDefault("tolerance", "0.2")), System.out);
+                if (report.hasErrors()) {
+                    System.out.println("Requests failed, see the errors column");
+                }
+                exitCode = passed && !report.hasErrors() ? 0 : 1;
+            }
+        }
+        finally {
+            SpringApplication.exit(context);
+        }
+        System.exit(exitCode);
+    }
+
+    // through the service, the password hashing of the signups is not part of the measurement
+    private static List<User> seed(UserService userService, int count) {
+        List<User> seededUsers = new ArrayList<>(count);
+        for (int start = 0; start < count; start += UserService.MAX_BULK_SIZE) {
+            List<User> users = new ArrayList<>();
+            for (int i = start; i < Math.min(count, start + UserService.MAX_BULK_SIZE); i++) {
+                User user = new User();
+                user.setUsername("seededUser" + i);
+                user.setPassword(PASSWORD);
+                user.setBirthdate(LocalDate.of(2000, 1, 1));
+                users.add(user);
+            }
+            seededUsers.addAll(userService.createUsers(users));
+        }
+        return seededUsers;
+    }
+
+    // e.g. get=10,list=4: 10 of 14 requests are a get, as one array to pick a random element from
+    static Operation[] parseMix(String mix) {
+        List<Operation> operations = new ArrayList<>();
+        for (String entry : mix.split(",")) {
+            String[] operationAndWeight = entry.trim().split("=");
+            if (operationAndWeight.length != 2) {
+                throw new IllegalArgumentException("The mix entry " + entry + " is not of the form <operation>=<weight>");
+            }
+            Operation operation = Operation.valueOf(operationAndWeight[0].trim().toUpperCase());
+            for (int i = Integer.parseInt(operationAndWeight[1].trim()); i > 0; i--) {
+                operations.add(operation);
+            }
+        }
+        if (operations.isEmpty()) {
+            throw new IllegalArgumentException("The mix " + mix + " has no operation with a positive weight");
+        }
+        return operations.toArray(new Operation[0]);
+    }
+
+    private Map<Operation, Recording> run(int concurrency, long warmupSeconds, long durationSeconds) throws InterruptedException {
+        long measureFrom = System.nanoTime() + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long measureUntil = measureFrom + TimeUnit.SECONDS.toNanos(durationSeconds);
+        List<Client> clients = new ArrayList<>(concurrency);
+        List<Thread> threads = new ArrayList<>(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            Client client = new Client(i, seededUsers.get(i + 1), measureFrom, measureUntil);
+            clients.add(client);
+            threads.add(new Thread(client, "load-test-client-" + i));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Map<Operation, Recording> recordings = new EnumMap<>(Operation.class);
+        for (Client client : clients) {
+            if (client.failure != null) {
+                abortedClients++;
+                System.out.printf("Load test client %d aborted: %s%n", client.index, client.failure);
+            }
+            client.recordings.forEach((operation, recording) ->
+                    recordings.computeIfAbsent(operation, o -> new Recording()).addAll(recording));
+        }
+        return recordings;
+    }
+
+    enum Operation {
+        REGISTER, LOGIN, LIST, GET, MODIFY, LOGOUT
+    }
+
+    /**
+     * One client: sends a request of the mix after the other and records the latencies of the measured ones in
+     * recordings of its own, so that the clients do not contend for them.
+     */
+    private final class Client implements Runnable {
+
+        private final int index;
+        private final User user;
+        private final long measureFrom;
+        private final long measureUntil;
+        private final SplittableRandom random;
+        private final Map<Operation, Recording> recordings = new EnumMap<>(Operation.class);
+
+        // the token of the last login of the own user, null after a logout
+        private String token;
+        private int registrations;
+
+        // why the client aborted, read by the main thread after it has joined the thread of the client
+        private Exception failure;
+
+        private Client(int index, User user, long measureFrom, long measureUntil) {
+            this.index = index;
+            this.user = user;
+            this.measureFrom = measureFrom;
+            this.measureUntil = measureUntil;
+            this.random = new SplittableRandom(index);
+            this.token = user.getToken();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    Operation operation = mix[random.nextInt(mix.length)];
+                    // a signed token is revoked by the logout, the next login is not measured
+                    if (token == null && (operation == Operation.MODIFY || operation == Operation.LOGOUT)) {
+                        token = login();
+                    }
+                    HttpRequest request = request(operation);
+                    long start = System.nanoTime();
+                    if (start - measureUntil >= 0) {
+                        return;
+                    }
+                    HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+                    long latency = System.nanoTime() - start;
+                    boolean success = response.statusCode() / 100 == 2;
+                    if (success) {
+                        handle(operation, response);
+                    }
+                    if (start - measureFrom >= 0) {
+                        recordings.computeIfAbsent(operation, o -> new Recording()).record(latency, success);
+                    }
+                }
+            }
+            catch (IOException | RuntimeException e) {
+                // reported by the main thread, which fails the load test
+                failure = e;
+            }
+            catch (InterruptedException e) {
+                failure = e;
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private HttpRequest request(Operation operation) throws IOException {
+            switch (operation) {
+                case REGISTER:
+                    return post("/users", credentials("client" + index + "-user" + registrations++)).build();
+                case LOGIN:
+                    return put("/users", credentials(user.getUsername())).build();
+                case LIST:
+                    return get("/users?limit=20").header("token", readToken).build();
+                case GET:
+                    return get("/users/" + seededUsers.get(random.nextInt(seededUsers.size())).getId())
+                            .header("token", readToken).build();
+                case MODIFY:
+                    // without a new username, only the birthdate changes
+                    return post("/users/" + user.getId(), objectMapper.writeValueAsString(
+                            Map.of("username", "", "birthdate", LocalDate.of(2000, 1, 1).plusDays(random.nextInt(365)).toString())))
+                            .header("token", token).build();
+                case LOGOUT:
+                    return put("/users/" + user.getId(), "").header("token", token).build();
+                default:
+                    throw new IllegalArgumentException("Unknown operation " + operation);
+            }
+        }
+
+        private void handle(Operation operation, HttpResponse<String> response) throws IOException {
+            if (operation == Operation.LOGIN) {
+                token = objectMapper.readTree(response.body()).get("token").asText();
+            }
+            else if (operation == Operation.LOGOUT) {
+                token = null;
+            }
+        }
+
+        private String login() throws IOException, InterruptedException {
+            HttpResponse<String> response = httpClient.send(put("/users", credentials(user.getUsername())).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() / 100 != 2) {
+                throw new IllegalStateException("The login of " + user.getUsername() + " failed with " + response.statusCode());
+            }
+            return objectMapper.readTree(response.body()).get("token").asText();
+        }
+
+        private String credentials(String username) throws IOException {
+            return objectMapper.writeValueAsString(Map.of("username", username, "password", PASSWORD, "birthdate", "2000-01-01"));
+        }
+
+        private HttpRequest.Builder get(String path) {
+            return HttpRequest.newBuilder(URI.create(baseUrl + path)).GET();
+        }
+
+        private HttpRequest.Builder post(String path, String body) {
+            return HttpRequest.newBuilder(URI.create(baseUrl + path)).header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(body));
+        }
+
+        private HttpRequest.Builder put(String path, String body) {
+            return HttpRequest.newBuilder(URI.create(baseUrl + path)).header("Content-Type", "application/json")
+                    .PUT(HttpRequest.BodyPublishers.ofString(body));
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package ch.uzh.ifi.hase.soprafs21.loadtest;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load Test Report
+ * The throughput (requests per second) and the p50, p99 and p999 latencies (milliseconds) of every operation of a load
+ * test, as properties: {@code <operation>.throughput}, {@code <operation>.p50}, ... and {@code total.throughput}.
+ * Compared to a baseline of the same settings, a throughput below or a latency above the baseline by more than the
+ * tolerance is a regression. The baseline is only as good as the machine it was measured on, so it has to be stored
+ * again (update-baseline) on the machine that runs the comparisons.
+ */
+final class LoadTestReport {
+
+    private static final String SETTINGS = "settings";
+
+    private static final String TOTAL = "total";
+
+    // the percentiles in the report, by name
+    private static final Map<String, Double> PERCENTILES = Map.of("p50", 0.5, "p99", 0.99, "p999", 0.999);
+
+    private final String settings;
+
+    // sorted, so that a new baseline can be compared to the old one line by line
+    private final Map<String, Double> values = new TreeMap<>();
+
+    private long errors;
+
+    LoadTestReport(String settings, Map<LoadTest.Operation, Recording> recordings, long durationSeconds) {
+        this.settings = settings;
+        long total = 0;
+        for (Map.Entry<LoadTest.Operation, Recording> entry : recordings.entrySet()) {
+            String operation = entry.getKey().name().toLowerCase();
+            Recording recording = entry.getValue();
+            values.put(operation + ".throughput", (double) recording.getCount() / durationSeconds);
+            for (Map.Entry<String, Double> percentile : PERCENTILES.entrySet()) {
+                values.put(operation + "." + percentile.getKey(), toMillis(recording.percentile(percentile.getValue())));
+            }
+            values.put(operation + ".errors", (double) recording.getErrors());
+            total += recording.getCount();
+            errors += recording.getErrors();
+        }
+        values.put(TOTAL + ".throughput", (double) total / durationSeconds);
+    }
+
+    private static double toMillis(long nanos) {
+        return (double) nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    boolean hasErrors() {
+        return errors > 0;
+    }
+
+    void print(PrintStream out) {
+        out.printf("%n%-10s %12s %10s %10s %10s %8s%n", "operation", "requests/s", "p50 ms", "p99 ms", "p999 ms", "errors");
+        for (LoadTest.Operation operation : LoadTest.Operation.values()) {
+            String name = operation.name().toLowerCase();
+            if (values.containsKey(name + ".throughput")) {
+                out.printf("%-10s %12.1f %10.2f %10.2f %10.2f %8.0f%n", name, values.get(name + ".throughput"),
+                        values.get(name + ".p50"), values.get(name + ".p99"), values.get(name + ".p999"),
+                        values.get(name + ".errors"));
+            }
+        }
+        out.printf("%-10s %12.1f%n%n", TOTAL, values.get(TOTAL + ".throughput"));
+    }
+
+    /**
+     * Writes the report into the given directory, one file per run.
+     */
+    void write(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        store(directory.resolve("results-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".properties"));
+    }
+
+    void writeBaseline(Path baseline) throws IOException {
+        Path parent = baseline.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        store(baseline);
+    }
+
+    // written line by line instead of with Properties.store, which neither keeps the order nor leaves out the date
+    private void store(Path file) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file)) {
+            writer.write("# Load test results, see LoadTestReport\n");
+            writer.write(SETTINGS + "=" + settings + "\n");
+            for (Map.Entry<String, Double> entry : values.entrySet()) {
+                writer.write(String.format(Locale.ROOT, "%s=%.3f\n", entry.getKey(), entry.getValue()));
+            }
+        }
+    }
+
+    /**
+     * Compares the report to the given baseline and prints every regression.
+     *
+     * @param tolerance share by which a value may be worse than the baseline, e.g. 0.2 for 20%
+     * @return false if there is a regression, true if there is none or no baseline of the same settings to compare to
+     */
+    boolean compareTo(Path baseline, double tolerance, PrintStream out) throws IOException {
+        if (!Files.exists(baseline)) {
+            out.printf("No baseline %s to compare to, store one with --update-baseline=true%n", baseline);
+            return true;
+        }
+        Properties baselineValues = new Properties();
+        try (Reader reader = Files.newBufferedReader(baseline)) {
+            baselineValues.load(reader);
+        }
+        if (!settings.equals(baselineValues.getProperty(SETTINGS))) {
+            out.printf("The baseline %s was measured with other settings (%s), not compared%n",
+                    baseline, baselineValues.getProperty(SETTINGS));
+            return true;
+        }
+
+        List<String> regressions = new ArrayList<>();
+        for (Map.Entry<String, Double> entry : values.entrySet()) {
+            String key = entry.getKey();
+            String baselineValue = baselineValues.getProperty(key);
+            if (baselineValue == null || key.endsWith(".errors")) {
+                continue;
+            }
+            double expected = Double.parseDouble(baselineValue);
+            double actual = entry.getValue();
+            boolean regressed = key.endsWith(".throughput")
+                    ? actual < expected * (1 - tolerance)
+                    : actual > expected * (1 + tolerance);
+            if (regressed) {
+                regressions.add(String.format("%s: %.2f, baseline %.2f (%+.0f%%)", key, actual, expected,
+                        expected == 0 ? 0 : (actual - expected) / expected * 100));
+            }
+        }
+        if (regressions.isEmpty()) {
+            out.printf("No regression against the baseline %s (tolerance %.0f%%)%n", baseline, tolerance * 100);
+            return true;
+        }
+        out.printf("Regressions against the baseline %s (tolerance %.0f%%):%n", baseline, tolerance * 100);
+        regressions.forEach(regression -> out.println("  " + regression));
+        return false;
+    }
+}
@@ -0,0 +1,60 @@
+package ch.uzh.ifi.hase.soprafs21.loadtest;
+
+import java.util.Arrays;
+
+/**
+ * Recording
+ * The latencies (in nanoseconds) of the measured requests of one operation and the number of failed requests. Every
+ * latency is kept, so the percentiles are exact; a few minutes of requests take a few megabytes.
+ */
+final class Recording {
+
+    private long[] latencies = new long[1024];
+
+    private int count;
+
+    private long errors;
+
+    private boolean sorted;
+
+    void record(long latency, boolean success) {
+        if (count == latencies.length) {
+            latencies = Arrays.copyOf(latencies, count * 2);
+        }
+        latencies[count++] = latency;
+        sorted = false;
+        if (!success) {
+            errors++;
+        }
+    }
+
+    void addAll(Recording other) {
+        for (int i = 0; i < other.count; i++) {
+            record(other.latencies[i], true);
+        }
+        errors += other.errors;
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    long getErrors() {
+        return errors;
+    }
+
+    /**
+     * Returns the latency that the given share of the requests did not exceed (nearest rank), e.g. 0.99 for the p99.
+     */
+    long percentile(double share) {
+        if (count == 0) {
+            return 0;
+        }
+        if (!sorted) {
+            Arrays.sort(latencies, 0, count);
+            sorted = true;
+        }
+        int rank = (int) Math.ceil(share * count);
+        return latencies[Math.max(rank, 1) - 1];
+    }
+}
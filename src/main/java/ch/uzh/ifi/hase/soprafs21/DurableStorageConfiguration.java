@@ -0,0 +1,113 @@
+package ch.uzh.ifi.hase.soprafs21;
+
+import ch.uzh.ifi.hase.soprafs21.repository.StorageSnapshotter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.env.Environment;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Beans of the durable profile, which stores the users in H2 database files instead of the in-memory database
+ * (see application-durable.properties).
+ */
+@Configuration
+@Profile("durable")
+public class DurableStorageConfiguration {
+
+    // the name of the database in spring.datasource.url, its data is in <name>.mv.db
+    static final String DATABASE_NAME = "users";
+
+    private static final Logger log = LoggerFactory.getLogger(DurableStorageConfiguration.class);
+
+    // before any bean is created, so that the primary and the replica pool (see ReadWriteDataSourceConfiguration) only
+    // ever open the restored database
+    @Bean
+    public static BeanFactoryPostProcessor snapshotRestorer(Environment environment) {
+        return beanFactory -> restoreNewestSnapshot(Paths.get(environment.getProperty("soprafs21.storage.directory", "./data")));
+    }
+
+    /**
+     * Extracts the database files of the newest snapshot into the given directory, unless there already is a database.
+     * The files are extracted into a temporary directory first and only then moved into the given one, the data file
+     * last: a restore that fails halfway leaves no data file behind, so it is tried again at the next startup instead
+     * of H2 opening a partial database.
+     *
+     * @return true if a snapshot was restored
+     */
+    static boolean restoreNewestSnapshot(Path directory) {
+        if (Files.exists(directory.resolve(DATABASE_NAME + ".mv.db"))) {
+            return false;
+        }
+        List<Path> snapshots = StorageSnapshotter.findSnapshots(StorageSnapshotter.getSnapshotDirectory(directory.toString()));
+        if (snapshots.isEmpty()) {
+            return false;
+        }
+        Path snapshot = snapshots.get(snapshots.size() - 1);
+        Path extractDirectory = null;
+        try {
+            Files.createDirectories(directory);
+            // in the directory itself, so that the files can be moved atomically
+            extractDirectory = Files.createTempDirectory(directory, ".restore-");
+            List<Path> files = extract(snapshot, extractDirectory);
+            files.sort(Comparator.comparing((Path file) -> file.getFileName().toString().equals(DATABASE_NAME + ".mv.db")));
+            for (Path file : files) {
+                Files.move(file, directory.resolve(file.getFileName()), StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Could not restore the snapshot " + snapshot, e);
+        }
+        finally {
+            if (extractDirectory != null) {
+                deleteRecursively(extractDirectory);
+            }
+        }
+        log.info("Restored the database from the snapshot {}", snapshot);
+        return true;
+    }
+
+    // the database files of the snapshot, extracted into the given (empty) directory
+    private static List<Path> extract(Path snapshot, Path directory) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (ZipInputStream zip = new ZipInputStream(Files.newInputStream(snapshot))) {
+            for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+                Path file = directory.resolve(entry.getName()).normalize();
+                // only the files of the database, and never outside of the directory
+                if (!entry.isDirectory() && directory.normalize().equals(file.getParent())
+                        && file.getFileName().toString().startsWith(DATABASE_NAME + ".")) {
+                    Files.copy(zip, file);
+                    files.add(file);
+                }
+            }
+        }
+        return files;
+    }
+
+    private static void deleteRecursively(Path directory) {
+        try (Stream<Path> files = Files.walk(directory)) {
+            // the files before their directory
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+        catch (IOException e) {
+            log.warn("Could not delete the directory {} of a restore", directory, e);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package ch.uzh.ifi.hase.soprafs21;
+
+import ch.uzh.ifi.hase.soprafs21.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs21.controller.UserController;
+import io.r2dbc.spi.ConnectionFactory;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.data.convert.ReadingConverter;
+import org.springframework.data.convert.WritingConverter;
+import org.springframework.data.r2dbc.convert.R2dbcCustomConversions;
+import org.springframework.data.r2dbc.dialect.DialectResolver;
+import org.springframework.data.r2dbc.mapping.R2dbcMappingContext;
+import org.springframework.web.reactive.config.CorsRegistry;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
+
+import java.util.List;
+
+/**
+ * Beans of the reactive profile (WebFlux and R2DBC), the servlet stack is configured in the Application.
+ */
+@Configuration
+@Profile("reactive")
+public class ReactiveConfiguration {
+
+    // Tomcat is on the classpath for the servlet stack, the reactive stack should run on Netty
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+
+    @Bean
+    public WebFluxConfigurer reactiveCorsConfigurer() {
+        return new WebFluxConfigurer() {
+            @Override
+            public void addCorsMappings(CorsRegistry registry) {
+                registry.addMapping("/**").allowedOrigins("*").allowedMethods("*")
+                        .exposedHeaders(UserController.NEXT_CURSOR_HEADER);
+            }
+        };
+    }
+
+    // quoted names, USER is a reserved word in H2 (the derived names are lower case, see schema-reactive.sql)
+    @Bean
+    public R2dbcMappingContext r2dbcMappingContext(R2dbcCustomConversions r2dbcCustomConversions) {
+        R2dbcMappingContext mappingContext = new R2dbcMappingContext();
+        mappingContext.setForceQuote(true);
+        mappingContext.setSimpleTypeHolder(r2dbcCustomConversions.getSimpleTypeHolder());
+        return mappingContext;
+    }
+
+    // the status is stored as its ordinal, like JPA does, instead of the R2DBC default (the enum name)
+    @Bean
+    public R2dbcCustomConversions r2dbcCustomConversions(ConnectionFactory connectionFactory) {
+        return R2dbcCustomConversions.of(DialectResolver.getDialect(connectionFactory),
+                List.of(new UserStatusWritingConverter(), new UserStatusReadingConverter()));
+    }
+
+    @WritingConverter
+    static class UserStatusWritingConverter implements Converter<UserStatus, Integer> {
+        @Override
+        public Integer convert(UserStatus status) {
+            return status.ordinal();
+        }
+    }
+
+    @ReadingConverter
+    static class UserStatusReadingConverter implements Converter<Integer, UserStatus> {
+        @Override
+        public UserStatus convert(Integer ordinal) {
+            return UserStatus.values()[ordinal];
+        }
+    }
+}
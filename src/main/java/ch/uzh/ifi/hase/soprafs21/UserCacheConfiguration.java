@@ -0,0 +1,88 @@
+package ch.uzh.ifi.hase.soprafs21;
+
+import ch.uzh.ifi.hase.soprafs21.entity.User;
+import org.ehcache.config.CacheConfiguration;
+import org.ehcache.config.builders.CacheConfigurationBuilder;
+import org.ehcache.config.builders.ExpiryPolicyBuilder;
+import org.ehcache.config.builders.ResourcePoolsBuilder;
+import org.ehcache.config.units.EntryUnit;
+import org.ehcache.core.config.DefaultConfiguration;
+import org.ehcache.expiry.ExpiryPolicy;
+import org.ehcache.jsr107.Eh107Configuration;
+import org.ehcache.jsr107.EhcacheCachingProvider;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cache.spi.RegionFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import java.net.URI;
+import java.time.Duration;
+import java.util.UUID;
+
+/**
+ * Regions of the Hibernate second-level cache (see application.properties): the users by id and the lookups by
+ * username and token, each bounded to soprafs21.user-cache.max-entries and expiring after soprafs21.user-cache.ttl-seconds,
+ * counted from the last write (time-to-live) or from the last read (time-to-idle) depending on soprafs21.user-cache.expiry.
+ * Beyond the maximum, Ehcache evicts the least recently used of a sample of entries.
+ */
+@Configuration
+@Profile("!reactive")
+public class UserCacheConfiguration {
+
+    // table name to time of the last change, must neither expire nor be evicted while a cached query depends on it
+    private static final int UPDATE_TIMESTAMPS_ENTRIES = 1000;
+
+    @Bean(destroyMethod = "close")
+    public CacheManager userCacheManager(@Value("${soprafs21.user-cache.max-entries:10000}") long maxEntries,
+                                         @Value("${soprafs21.user-cache.ttl-seconds:300}") long ttlSeconds,
+                                         @Value("${soprafs21.user-cache.expiry:time-to-live}") String expiry) {
+        if (maxEntries <= 0 || ttlSeconds <= 0) {
+            throw new IllegalArgumentException("The user cache needs a positive maximum number of entries and time to live");
+        }
+        ExpiryPolicy<Object, Object> expiryPolicy;
+        switch (expiry) {
+            case "time-to-live":
+                expiryPolicy = ExpiryPolicyBuilder.timeToLiveExpiration(Duration.ofSeconds(ttlSeconds));
+                break;
+            case "time-to-idle":
+                expiryPolicy = ExpiryPolicyBuilder.timeToIdleExpiration(Duration.ofSeconds(ttlSeconds));
+                break;
+            default:
+                throw new IllegalArgumentException("The expiry of the user cache must be time-to-live or time-to-idle, not " + expiry);
+        }
+
+        EhcacheCachingProvider provider = (EhcacheCachingProvider) Caching.getCachingProvider(EhcacheCachingProvider.class.getName());
+        // a cache manager of its own, several application contexts (e.g. of tests) must not share their caches
+        CacheManager cacheManager = provider.getCacheManager(URI.create("urn:soprafs21:user-cache:" + UUID.randomUUID()),
+                new DefaultConfiguration(provider.getDefaultClassLoader()));
+        cacheManager.createCache(User.CACHE_REGION, Eh107Configuration.fromEhcacheCacheConfiguration(
+                cacheConfiguration(maxEntries, expiryPolicy)));
+        cacheManager.createCache(User.LOOKUP_CACHE_REGION, Eh107Configuration.fromEhcacheCacheConfiguration(
+                cacheConfiguration(maxEntries, expiryPolicy)));
+        // the queries without a region of their own
+        cacheManager.createCache(RegionFactory.DEFAULT_QUERY_RESULTS_REGION_UNQUALIFIED_NAME,
+                Eh107Configuration.fromEhcacheCacheConfiguration(cacheConfiguration(maxEntries, expiryPolicy)));
+        cacheManager.createCache(RegionFactory.DEFAULT_UPDATE_TIMESTAMPS_REGION_UNQUALIFIED_NAME,
+                Eh107Configuration.fromEhcacheCacheConfiguration(
+                        cacheConfiguration(UPDATE_TIMESTAMPS_ENTRIES, ExpiryPolicyBuilder.noExpiration())));
+        return cacheManager;
+    }
+
+    private static CacheConfiguration<Object, Object> cacheConfiguration(long maxEntries, ExpiryPolicy<Object, Object> expiryPolicy) {
+        return CacheConfigurationBuilder.newCacheConfigurationBuilder(Object.class, Object.class,
+                ResourcePoolsBuilder.newResourcePoolsBuilder().heap(maxEntries, EntryUnit.ENTRIES))
+                .withExpiry(expiryPolicy)
+                .build();
+    }
+
+    // Hibernate takes its regions from this cache manager instead of creating one
+    @Bean
+    public HibernatePropertiesCustomizer userCacheManagerCustomizer(CacheManager userCacheManager) {
+        return properties -> properties.put(ConfigSettings.CACHE_MANAGER, userCacheManager);
+    }
+}
@@ -0,0 +1,51 @@
+package ch.uzh.ifi.hase.soprafs21.constant;
+
+import ch.uzh.ifi.hase.soprafs21.entity.User;
+
+import java.time.LocalDate;
+import java.util.function.BiConsumer;
+
+/**
+ * The fields of a user that can be requested with ?fields=, named like the properties of the UserGetDTO
+ * (and the attributes of the User entity).
+ */
+public enum UserField {
+
+    ID("id", (user, value) -> user.setId((Long) value)),
+    USERNAME("username", (user, value) -> user.setUsername((String) value)),
+    STATUS("status", (user, value) -> user.setStatus((UserStatus) value)),
+    CREATION_DATE("creationDate", (user, value) -> user.setCreationDate((LocalDate) value)),
+    BIRTHDATE("birthdate", (user, value) -> user.setBirthdate((LocalDate) value)),
+    TOKEN("token", (user, value) -> user.setToken((String) value)),
+    PASSWORD("password", (user, value) -> user.setPassword((String) value));
+
+    private final String name;
+
+    private final BiConsumer<User, Object> setter;
+
+    UserField(String name, BiConsumer<User, Object> setter) {
+        this.name = name;
+        this.setter = setter;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // sets the value that was selected for this field
+    public void set(User user, Object value) {
+        setter.accept(user, value);
+    }
+
+    /**
+     * Returns the field with the given name, or null if there is no such field.
+     */
+    public static UserField forName(String name) {
+        for (UserField field : values()) {
+            if (field.name.equals(name)) {
+                return field;
+            }
+        }
+        return null;
+    }
+}
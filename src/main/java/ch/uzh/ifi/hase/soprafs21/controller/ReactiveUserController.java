@@ -0,0 +1,170 @@
+package ch.uzh.ifi.hase.soprafs21.controller;
+
+import ch.uzh.ifi.hase.soprafs21.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs21.entity.User;
+import ch.uzh.ifi.hase.soprafs21.exceptions.UserError;
+import ch.uzh.ifi.hase.soprafs21.rest.dto.UserBatchDTO;
+import ch.uzh.ifi.hase.soprafs21.rest.dto.UserBulkResultDTO;
+import ch.uzh.ifi.hase.soprafs21.rest.dto.UserGetDTO;
+import ch.uzh.ifi.hase.soprafs21.rest.dto.UserPostDTO;
+import ch.uzh.ifi.hase.soprafs21.rest.mapper.DTOMapper;
+import ch.uzh.ifi.hase.soprafs21.service.ReactiveUserService;
+import ch.uzh.ifi.hase.soprafs21.service.UserService;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reactive User Controller
+ * This class offers the endpoints of the UserController on WebFlux (reactive profile), with the same DTOs and status codes.
+ * The requests are delegated to the ReactiveUserService, no request thread is blocked while waiting for the database.
+ */
+@RestController
+@Profile("reactive")
+public class ReactiveUserController {
+
+    private final ReactiveUserService userService;
+
+    ReactiveUserController(ReactiveUserService userService) {
+        this.userService = userService;
+    }
+
+    @GetMapping("/users")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public Mono<List<UserGetDTO>> getAllUsers(@RequestHeader("token") String token,
+                                              @RequestParam(value = "after", required = false) Long after,
+                                              @RequestParam(value = "limit", required = false) Integer limit,
+                                              @RequestParam(value = "status", required = false) UserStatus status,
+                                              ServerHttpResponse response) {
+        return userService.authenticateToken(token)
+                .thenMany(userService.getUsers(after, limit, status))
+                .collectList()
+                .map(users -> {
+                    // a full page means there may be more users -> the client continues with ?after=<next cursor>
+                    if (!users.isEmpty() && users.size() == UserService.getPageSize(limit)) {
+                        response.getHeaders().set(UserController.NEXT_CURSOR_HEADER, String.valueOf(users.get(users.size() - 1).getId()));
+                    }
+
+                    List<UserGetDTO> userGetDTOs = new ArrayList<>(users.size());
+                    for (User user : users) {
+                        userGetDTOs.add(DTOMapper.INSTANCE.convertEntityToUserGetDTO(user));
+                    }
+                    return userGetDTOs;
+                });
+    }
+
+    @GetMapping(value = "/users", params = "ids")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public Mono<UserBatchDTO> getUsersWithIds(@RequestHeader("token") String token, @RequestParam("ids") List<Long> ids) {
+        // deferred, so that the ids are only looked at once the token has been authenticated
+        return userService.authenticateToken(token)
+                .then(Mono.defer(() -> userService.getUsersWithIds(ids)))
+                .map(users -> DTOMapper.INSTANCE.convertEntitiesToUserBatchDTO(users, ids));
+    }
+
+    /**
+     * Streams all users as newline-delimited JSON (one UserGetDTO per line), with backpressure from the client
+     * down to the database.
+     */
+    @GetMapping(value = "/users/export", produces = UserController.NDJSON_VALUE)
+    public Flux<UserGetDTO> exportUsers(@RequestHeader("token") String token) {
+        return userService.authenticateToken(token)
+                .thenMany(userService.exportUsers())
+                .map(DTOMapper.INSTANCE::convertEntityToUserGetDTO);
+    }
+
+    @GetMapping("/users/{id}")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public Mono<UserGetDTO> getUserWithId(@PathVariable("id") Long id, @RequestHeader("token") String token) {
+        return userService.authenticateToken(token)
+                .then(userService.getUserWithId(id))
+                .map(DTOMapper.INSTANCE::convertEntityToUserGetDTO);
+    }
+
+    @PostMapping("/users")
+    @ResponseStatus(HttpStatus.CREATED)
+    @ResponseBody
+    public Mono<UserGetDTO> createUser(@RequestBody UserPostDTO userPostDTO) {
+        User userInput = DTOMapper.INSTANCE.convertUserPostDTOtoEntity(userPostDTO);
+
+        return userService.createUser(userInput)
+                .map(DTOMapper.INSTANCE::convertEntityToUserGetDTO);
+    }
+
+    /**
+     * Creates many users at once, see UserController#createUsers.
+     */
+    @PostMapping("/users/bulk")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public Mono<List<UserBulkResultDTO>> createUsers(@RequestBody List<UserPostDTO> userPostDTOs, @RequestHeader("token") String token) {
+        List<User> userInputs = new ArrayList<>(userPostDTOs.size());
+        for (UserPostDTO userPostDTO : userPostDTOs) {
+            userInputs.add(DTOMapper.INSTANCE.convertUserPostDTOtoEntity(userPostDTO));
+        }
+
+        return userService.authenticateToken(token)
+                .then(userService.createUsers(userInputs))
+                .map(createdUsers -> {
+                    List<UserBulkResultDTO> results = new ArrayList<>(createdUsers.size());
+                    for (int i = 0; i < createdUsers.size(); i++) {
+                        UserBulkResultDTO result = new UserBulkResultDTO();
+                        // a null element of the request is converted to null and reported as incomplete
+                        result.setUsername(userPostDTOs.get(i) == null ? null : userPostDTOs.get(i).getUsername());
+                        if (createdUsers.get(i) != null) {
+                            result.setStatus(HttpStatus.CREATED.value());
+                            result.setUser(DTOMapper.INSTANCE.convertEntityToUserGetDTO(createdUsers.get(i)));
+                        }
+                        else if (!UserService.isComplete(userInputs.get(i))) {
+                            result.setStatus(UserError.USER_INCOMPLETE.getStatus().value());
+                            result.setMessage(UserError.USER_INCOMPLETE.getMessage());
+                        }
+                        else {
+                            result.setStatus(HttpStatus.CONFLICT.value());
+                            result.setMessage(UserError.USERNAME_TAKEN.getMessage());
+                        }
+                        results.add(result);
+                    }
+                    return results;
+                });
+    }
+
+    @PutMapping("/users")
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    @ResponseBody
+    public Mono<UserGetDTO> loginUser(@RequestBody UserPostDTO userPostDTO) {
+        User userInput = DTOMapper.INSTANCE.convertUserPostDTOtoEntity(userPostDTO);
+
+        return userService.checkIfCredentialsExist(userInput)
+                .map(DTOMapper.INSTANCE::convertEntityToUserGetDTO);
+    }
+
+    @PutMapping("/users/{id}")
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    @ResponseBody
+    public Mono<UserGetDTO> logoutUser(@PathVariable("id") Long id, @RequestHeader("token") String token) {
+        return userService.authenticateToken(token)
+                .then(userService.logOut(id))
+                .map(DTOMapper.INSTANCE::convertEntityToUserGetDTO);
+    }
+
+    @PostMapping("/users/{id}")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    @ResponseBody
+    public Mono<UserGetDTO> modifyUser(@PathVariable("id") Long id, @RequestBody UserPostDTO userPostDTO, @RequestHeader("token") String token) {
+        User userInput = DTOMapper.INSTANCE.convertUserPostDTOtoEntity(userPostDTO);
+
+        return userService.authenticateToken(token)
+                .then(userService.modifyUser(id, userInput))
+                .thenReturn(DTOMapper.INSTANCE.convertEntityToUserGetDTO(userInput));
+    }
+}
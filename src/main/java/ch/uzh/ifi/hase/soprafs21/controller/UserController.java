@@ -1,17 +1,41 @@
 package ch.uzh.ifi.hase.soprafs21.controller;
 
+import ch.uzh.ifi.hase.soprafs21.constant.UserField;
+import ch.uzh.ifi.hase.soprafs21.constant.UserStatus;
 import ch.uzh.ifi.hase.soprafs21.entity.User;
+import ch.uzh.ifi.hase.soprafs21.exceptions.UserError;
+import ch.uzh.ifi.hase.soprafs21.rest.dto.UserBulkResultDTO;
 import ch.uzh.ifi.hase.soprafs21.rest.dto.UserGetDTO;
 import ch.uzh.ifi.hase.soprafs21.rest.dto.UserPostDTO;
 import ch.uzh.ifi.hase.soprafs21.rest.mapper.DTOMapper;
+import ch.uzh.ifi.hase.soprafs21.rest.mapper.UserJsonWriter;
 import ch.uzh.ifi.hase.soprafs21.service.UserService;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.ser.FilterProvider;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.converter.json.MappingJacksonValue;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
 
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * User Controller
@@ -19,41 +43,155 @@ import java.util.List;
  * The controller will receive the request and delegate the execution to the UserService and finally return the result.
  */
 @RestController
+@Profile("!reactive")
 public class UserController {
 
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    public static final String NDJSON_VALUE = "application/x-ndjson";
+
+    // number of exported users after which the response buffer is flushed to the client
+    private static final int EXPORT_FLUSH_INTERVAL = 500;
+
     private final Logger log = LoggerFactory.getLogger(UserService.class);
 
     private final UserService userService;
 
-    UserController(UserService userService) {
+    private final ObjectWriter exportWriter;
+
+    UserController(UserService userService, ObjectMapper objectMapper) {
         this.userService = userService;
+        this.exportWriter = objectMapper.writerFor(UserGetDTO.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
     }
 
+    // no @ResponseStatus on the conditional GETs, it would overwrite 304 NOT_MODIFIED
     @GetMapping("/users")
-    @ResponseStatus(HttpStatus.OK)
     @ResponseBody
-    public List<UserGetDTO> getAllUsers(@RequestHeader("token") String token) {
+    public MappingJacksonValue getAllUsers(@RequestHeader("token") String token,
+                                           @RequestParam(value = "after", required = false) Long after,
+                                           @RequestParam(value = "limit", required = false) Integer limit,
+                                           @RequestParam(value = "status", required = false) UserStatus status,
+                                           @RequestParam(value = "fields", required = false) Set<UserField> fields,
+                                           WebRequest request, HttpServletResponse response) {
         userService.authenticateToken(token);
-        // fetch all users in the internal representation
-        List<User> users = userService.getUsers();
-        List<UserGetDTO> userGetDTOs = new ArrayList<>();
+
+        // taken before the users are read, a change in between only leads to one more full response
+        String eTag = userService.getUsersETag();
+        if (eTag != null && request.checkNotModified(eTag)) {
+            return null;
+        }
+
+        // fetch one page of users in the internal representation, with ?fields= only the requested columns are read
+        List<User> users = checkFields(fields) == null ? userService.getUsers(after, limit, status)
+                : userService.getUsers(after, limit, status, fields);
+
+        // a full page means there may be more users -> the client continues with ?after=<next cursor>
+        if (!users.isEmpty() && users.size() == UserService.getPageSize(limit)) {
+            response.setHeader(NEXT_CURSOR_HEADER, String.valueOf(users.get(users.size() - 1).getId()));
+        }
+
+        // all fields: the users are written straight to the response in the API representation, without UserGetDTOs
+        if (fields == null) {
+            return new MappingJacksonValue(UserJsonWriter.users(users));
+        }
 
         // convert each user to the API representation
+        List<UserGetDTO> userGetDTOs = new ArrayList<>(users.size());
         for (User user : users) {
             userGetDTOs.add(DTOMapper.INSTANCE.convertEntityToUserGetDTO(user));
         }
-        return userGetDTOs;
+        return withFields(userGetDTOs, fields);
+    }
+
+    /**
+     * Returns the users with the given ids (?ids=1,2,3), e.g. the members of a lobby, with one authentication and
+     * one query instead of one request per user. Ids without a user are listed in missingIds.
+     */
+    @GetMapping(value = "/users", params = "ids")
+    @ResponseBody
+    public MappingJacksonValue getUsersWithIds(@RequestHeader("token") String token,
+                                               @RequestParam("ids") List<Long> ids,
+                                               @RequestParam(value = "fields", required = false) Set<UserField> fields) {
+        userService.authenticateToken(token);
+        checkFields(fields);
+
+        // all users with one query, mapped to the API representation in one call
+        List<User> users = userService.getUsersWithIds(ids);
+
+        return withFields(DTOMapper.INSTANCE.convertEntitiesToUserBatchDTO(users, ids), fields);
+    }
+
+    /**
+     * Streams all users as newline-delimited JSON (one UserGetDTO per line).
+     * Users are written while they are read from the database, so the memory usage does not depend on the number of users.
+     */
+    @GetMapping(value = "/users/export", produces = NDJSON_VALUE)
+    public void exportUsers(@RequestHeader("token") String token,
+                            @RequestParam(value = "fields", required = false) Set<UserField> fields,
+                            HttpServletResponse response) throws IOException {
+        userService.authenticateToken(token);
+        ObjectWriter writer = checkFields(fields) == null ? exportWriter : exportWriter.with(fieldsFilter(fields));
+
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(NDJSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        // send the headers right away, the client should not have to wait for the first row
+        response.flushBuffer();
+
+        try (JsonGenerator generator = exportWriter.getFactory().createGenerator(response.getOutputStream())) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            // every user ends with its own line break instead of the default separator between root values
+            generator.setRootValueSeparator(null);
+            long[] exported = {0};
+            Consumer<User> exportUser = user -> {
+                try {
+                    if (fields == null) {
+                        UserJsonWriter.writeUser(generator, user);
+                    }
+                    else {
+                        writer.writeValue(generator, DTOMapper.INSTANCE.convertEntityToUserGetDTO(user));
+                    }
+                    generator.writeRaw('\n');
+                    if (exported[0]++ % EXPORT_FLUSH_INTERVAL == 0) {
+                        generator.flush();
+                    }
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            };
+            if (fields == null) {
+                userService.exportUsers(exportUser);
+            }
+            else {
+                userService.exportUsers(fields, exportUser);
+            }
+        }
     }
 
     @GetMapping("/users/{id}")
-    @ResponseStatus(HttpStatus.OK)
     @ResponseBody
-    public UserGetDTO getUserWithId(@PathVariable("id") Long id, @RequestHeader("token") String token) {
+    public MappingJacksonValue getUserWithId(@PathVariable("id") Long id, @RequestHeader("token") String token,
+                                             @RequestParam(value = "fields", required = false) Set<UserField> fields,
+                                             @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                                             WebRequest request, HttpServletResponse response) {
         userService.authenticateToken(token);
 
-        User user = userService.getUserWithId(id);
+        // a polling client sends the ETag of its copy, which is compared to the version without loading the user
+        if (ifNoneMatch != null) {
+            String eTag = userService.getUserETag(id);
+            if (eTag != null && request.checkNotModified(eTag)) {
+                return null;
+            }
+        }
+
+        User user = checkFields(fields) == null ? userService.getUserWithId(id) : userService.getUserWithId(id, fields);
+        String eTag = userService.getUserETag(user);
+        if (eTag != null) {
+            response.setHeader(HttpHeaders.ETAG, eTag);
+        }
 
-        return DTOMapper.INSTANCE.convertEntityToUserGetDTO(user);
+        return withFields(DTOMapper.INSTANCE.convertEntityToUserGetDTO(user), fields);
     }
 
     @PostMapping("/users")
@@ -70,6 +208,48 @@ public class UserController {
         return DTOMapper.INSTANCE.convertEntityToUserGetDTO(createdUser);
     }
 
+    /**
+     * Creates many users at once. Every entry of the response belongs to the entry with the same index in the request
+     * and reports whether the user was created (201), the username or the password was missing (400) or the username
+     * was already taken (409).
+     */
+    @PostMapping("/users/bulk")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public List<UserBulkResultDTO> createUsers(@RequestBody List<UserPostDTO> userPostDTOs, @RequestHeader("token") String token) {
+        userService.authenticateToken(token);
+
+        // convert API users to internal representation
+        List<User> userInputs = new ArrayList<>(userPostDTOs.size());
+        for (UserPostDTO userPostDTO : userPostDTOs) {
+            userInputs.add(DTOMapper.INSTANCE.convertUserPostDTOtoEntity(userPostDTO));
+        }
+
+        // create users
+        List<User> createdUsers = userService.createUsers(userInputs);
+
+        List<UserBulkResultDTO> results = new ArrayList<>(createdUsers.size());
+        for (int i = 0; i < createdUsers.size(); i++) {
+            UserBulkResultDTO result = new UserBulkResultDTO();
+            // a null element of the request is converted to null and reported as incomplete
+            result.setUsername(userPostDTOs.get(i) == null ? null : userPostDTOs.get(i).getUsername());
+            if (createdUsers.get(i) != null) {
+                result.setStatus(HttpStatus.CREATED.value());
+                result.setUser(DTOMapper.INSTANCE.convertEntityToUserGetDTO(createdUsers.get(i)));
+            }
+            else if (!UserService.isComplete(userInputs.get(i))) {
+                result.setStatus(UserError.USER_INCOMPLETE.getStatus().value());
+                result.setMessage(UserError.USER_INCOMPLETE.getMessage());
+            }
+            else {
+                result.setStatus(HttpStatus.CONFLICT.value());
+                result.setMessage(UserError.USERNAME_TAKEN.getMessage());
+            }
+            results.add(result);
+        }
+        return results;
+    }
+
     @PutMapping("/users")
     @ResponseStatus(HttpStatus.ACCEPTED)
     @ResponseBody
@@ -77,9 +257,6 @@ public class UserController {
         User userInput = DTOMapper.INSTANCE.convertUserPostDTOtoEntity(userPostDTO);
 
         User updatedUser = userService.checkIfCredentialsExist(userInput);
-        System.out.print("User authentication: ");
-        System.out.print(updatedUser);
-
         return DTOMapper.INSTANCE.convertEntityToUserGetDTO(updatedUser);
     }
 
@@ -103,10 +280,6 @@ public class UserController {
         // convert API user to internal representation
         User userInput = DTOMapper.INSTANCE.convertUserPostDTOtoEntity(userPostDTO);
 
-        System.out.println(userInput.getUsername());
-        System.out.println(userInput.getPassword());
-        System.out.println(userInput.getBirthdate());
-
         // modify user
         User user = userService.modifyUser(id, userInput);
 
@@ -114,4 +287,28 @@ public class UserController {
         return DTOMapper.INSTANCE.convertEntityToUserGetDTO(userInput);
     }
 
+    // ?fields= without any field name
+    private static Set<UserField> checkFields(Set<UserField> fields) {
+        if (fields != null && fields.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "At least one field must be requested");
+        }
+        return fields;
+    }
+
+    // only the requested fields of the UserGetDTOs are serialized, all of them without ?fields=
+    private static MappingJacksonValue withFields(Object body, Set<UserField> fields) {
+        MappingJacksonValue value = new MappingJacksonValue(body);
+        if (fields != null) {
+            value.setFilters(fieldsFilter(fields));
+        }
+        return value;
+    }
+
+    private static FilterProvider fieldsFilter(Set<UserField> fields) {
+        Set<String> names = new HashSet<>();
+        for (UserField field : fields) {
+            names.add(field.getName());
+        }
+        return new SimpleFilterProvider().addFilter(UserGetDTO.FIELDS_FILTER, SimpleBeanPropertyFilter.filterOutAllExcept(names));
+    }
 }
@@ -1,6 +1,9 @@
 package ch.uzh.ifi.hase.soprafs21.entity;
 
 import ch.uzh.ifi.hase.soprafs21.constant.UserStatus;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.DynamicUpdate;
 import java.time.LocalDate;
 
 import javax.persistence.*;
@@ -14,19 +17,37 @@ import java.io.Serializable;
  * - unique = true -> this value must be unqiue across the database -> composes the primary key
  */
 @Entity
-@Table(name = "USER")
+// kept in the second-level cache, which is updated on commit and evicted per user by the status updates of the PresenceRegistry
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = User.CACHE_REGION)
+// only the changed columns are updated, so a modification cannot overwrite the status written by the PresenceRegistry
+@DynamicUpdate
+@EntityListeners(UserChangeListener.class)
+// quoted, USER is a reserved word in H2 2.x
+// the unique constraint of the username has a fixed name, so that a violation can be told apart from other constraints
+@Table(name = "`USER`", indexes = @Index(name = "IDX_USER_STATUS_ID", columnList = "status, id"),
+        uniqueConstraints = @UniqueConstraint(name = User.USERNAME_CONSTRAINT, columnNames = "username"))
 public class User implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
+    public static final String USERNAME_CONSTRAINT = "UK_USER_USERNAME";
+
+    // second-level cache regions of the users by id and of the lookups by username and token (see UserRepository)
+    public static final String CACHE_REGION = "user";
+    public static final String LOOKUP_CACHE_REGION = "user-lookups";
+
+    // pooled sequence: ids are reserved in blocks so that inserts can be sent to the database in JDBC batches
     @Id
-    @GeneratedValue
+    @org.springframework.data.annotation.Id // id for the R2DBC mapping of the reactive profile
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "user_sequence")
+    @SequenceGenerator(name = "user_sequence", sequenceName = "USER_SEQUENCE", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false)
     private String password;
 
-    @Column(nullable = false, unique = true)
+    @Column(nullable = false)
     private String username;
 
     @Column(nullable = false, unique = true)
@@ -41,6 +62,10 @@ public class User implements Serializable {
     @Column(nullable = true)
     private LocalDate birthdate;
 
+    // incremented on every update, the ETag of the user is derived from it
+    @Version
+    private Long version;
+
     public String getPassword() {
         return password;
     }
@@ -96,4 +121,12 @@ public class User implements Serializable {
     public void setBirthdate(LocalDate birthdate) {
         this.birthdate = birthdate;
     }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
 }
@@ -0,0 +1,28 @@
+package ch.uzh.ifi.hase.soprafs21.entity;
+
+import ch.uzh.ifi.hase.soprafs21.service.UserChangeTracker;
+import org.springframework.beans.factory.ObjectProvider;
+
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+
+/**
+ * Reports every change of a User to the UserChangeTracker (if there is one, e.g. not in repository tests).
+ * Hibernate creates this listener through Spring, which injects the tracker.
+ */
+public class UserChangeListener {
+
+    private final ObjectProvider<UserChangeTracker> changeTracker;
+
+    public UserChangeListener(ObjectProvider<UserChangeTracker> changeTracker) {
+        this.changeTracker = changeTracker;
+    }
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void userChanged(User user) {
+        changeTracker.ifAvailable(UserChangeTracker::userChanged);
+    }
+}
@@ -0,0 +1,52 @@
+package ch.uzh.ifi.hase.soprafs21.exceptions;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.transaction.TransactionSystemException;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+/**
+ * Maps the exceptions of the reactive profile to the same responses as the GlobalExceptionAdvice does on the
+ * servlet stack. ResponseStatusExceptions are rendered by WebFlux itself.
+ */
+@Profile("reactive")
+@ControllerAdvice(annotations = RestController.class)
+public class ReactiveExceptionAdvice {
+
+    private final Logger log = LoggerFactory.getLogger(ReactiveExceptionAdvice.class);
+
+    @ExceptionHandler(value = {IllegalArgumentException.class, IllegalStateException.class, OptimisticLockingFailureException.class})
+    protected ResponseEntity<Object> handleConflict(RuntimeException ex) {
+        String bodyOfResponse = "This should be application specific";
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(bodyOfResponse);
+    }
+
+    @ExceptionHandler(UserErrorException.class)
+    public ResponseEntity<byte[]> handleUserError(UserErrorException ex) {
+        UserError error = ex.getError();
+        return ResponseEntity.status(error.getStatus()).contentType(MediaType.APPLICATION_JSON).body(error.body());
+    }
+
+    @ExceptionHandler(TransactionSystemException.class)
+    public Mono<Void> handleTransactionSystemException(Exception ex, ServerHttpRequest request) {
+        log.error("Request: {} raised {}", request.getURI(), ex);
+        return Mono.error(new ResponseStatusException(HttpStatus.CONFLICT, ex.getMessage(), ex));
+    }
+
+    @ExceptionHandler(HttpServerErrorException.InternalServerError.class)
+    public Mono<Void> handleException(Exception ex) {
+        log.error("Default Exception Handler -> caught:", ex);
+        return Mono.error(new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, ex.getMessage(), ex));
+    }
+}
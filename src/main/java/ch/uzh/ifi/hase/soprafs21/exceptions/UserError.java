@@ -0,0 +1,78 @@
+package ch.uzh.ifi.hase.soprafs21.exceptions;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import org.springframework.http.HttpStatus;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * User Error
+ * The errors a client causes on the user endpoints, each with a stable code for the clients to check against.
+ * Rejecting a wrong token or unknown id has to be cheap, since an attacker can send as many as the rate limits allow:
+ * every error has one exception without a stack trace that the servlet stack throws again and again, and the JSON
+ * body of its response is built once (see GlobalExceptionAdvice), e.g.
+ * {@code {"status":400,"error":"Bad Request","code":"TOKEN_INVALID","message":"Token could not be authenticated"}}.
+ */
+public enum UserError {
+
+    TOKEN_INVALID(HttpStatus.BAD_REQUEST, "Token could not be authenticated"),
+    CREDENTIALS_INVALID(HttpStatus.BAD_REQUEST, "The credentials are wrong."),
+    USER_NOT_FOUND(HttpStatus.NOT_FOUND, "The user was not found."),
+    USERNAME_TAKEN(HttpStatus.CONFLICT, "The username provided is not unique. Therefore, the user could not be created!"),
+    USER_INCOMPLETE(HttpStatus.BAD_REQUEST, "A username and a password are required.");
+
+    private final HttpStatus status;
+
+    private final String message;
+
+    private final byte[] body;
+
+    private final UserErrorException exception;
+
+    UserError(HttpStatus status, String message) {
+        this.status = status;
+        this.message = message;
+        JsonStringEncoder encoder = JsonStringEncoder.getInstance();
+        this.body = ("{\"status\":" + status.value()
+                + ",\"error\":\"" + new String(encoder.quoteAsString(status.getReasonPhrase()))
+                + "\",\"code\":\"" + name()
+                + "\",\"message\":\"" + new String(encoder.quoteAsString(message)) + "\"}")
+                .getBytes(StandardCharsets.UTF_8);
+        this.exception = new UserErrorException(this, null);
+    }
+
+    public HttpStatus getStatus() {
+        return status;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * Returns the exception of this error, the same instance on every call.
+     */
+    public UserErrorException exception() {
+        return exception;
+    }
+
+    /**
+     * Returns a new exception of this error, for the reactive profile: Reactor adds the traces of its checkpoints to
+     * an error as suppressed exceptions, which would pile up on the shared one.
+     */
+    public UserErrorException newException() {
+        return new UserErrorException(this, null);
+    }
+
+    /**
+     * Returns a new exception of this error with the given cause, for the rare errors whose cause has to be logged.
+     */
+    public UserErrorException exception(Throwable cause) {
+        return new UserErrorException(this, cause);
+    }
+
+    // the response body, shared by all responses of this error and therefore never modified
+    byte[] body() {
+        return body;
+    }
+}
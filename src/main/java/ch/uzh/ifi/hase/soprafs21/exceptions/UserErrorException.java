@@ -0,0 +1,31 @@
+package ch.uzh.ifi.hase.soprafs21.exceptions;
+
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * User Error Exception
+ * The exception of a UserError. It is a ResponseStatusException, so it is handled like one wherever the UserError
+ * is not known, but it has no stack trace: the place it is thrown from says nothing about a wrong token or an unknown
+ * id, and filling in the stack trace is most of the cost of throwing an exception.
+ * Without a cause, one instance per error is thrown by every request of the servlet stack (see UserError.exception()),
+ * so it must not be given suppressed exceptions, e.g. by throwing it from the body of a try-with-resources statement
+ * or by passing it through Reactor, which is why the reactive profile uses a new instance per error.
+ */
+public final class UserErrorException extends ResponseStatusException {
+
+    private final UserError error;
+
+    UserErrorException(UserError error, Throwable cause) {
+        super(error.getStatus(), error.getMessage(), cause);
+        this.error = error;
+    }
+
+    public UserError getError() {
+        return error;
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+}
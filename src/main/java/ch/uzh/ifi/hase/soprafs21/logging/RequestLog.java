@@ -0,0 +1,194 @@
+package ch.uzh.ifi.hase.soprafs21.logging;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Request Log
+ * This class logs the events of the request path (signups, logins, token checks, modifications) as structured
+ * key=value lines without making the request wait: an event is put into a bounded RingBuffer and written by a
+ * background thread, so that request threads never contend for the lock of the log output.
+ * The writer sleeps while the buffer is empty and is woken by the first event after that, so an idle server does
+ * not wake it up at all. Events that do not fit into the buffer are dropped and counted. Frequent events can be sampled (e.g. only 1% of
+ * the token checks), and the values of secrets (passwords, tokens) are redacted before they enter the buffer.
+ */
+@Component
+public class RequestLog implements DisposableBean {
+
+    static final String REDACTED = "[redacted]";
+
+    private static final Set<String> SECRETS = Set.of("password", "token");
+
+    private final Logger log = LoggerFactory.getLogger(RequestLog.class);
+
+    private final RingBuffer<Event> buffer;
+
+    // event name -> share of the events that is logged, all events of the other names are logged
+    private final Map<String, Double> sampleRates = new HashMap<>();
+
+    private final Consumer<String> sink;
+
+    private final Thread writer;
+
+    private volatile boolean running = true;
+
+    // set by the writer before it parks on an empty buffer, the producers unpark it while it is set
+    private volatile boolean sleeping;
+
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong sampledOut = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+
+    @Autowired
+    public RequestLog(@Value("${soprafs21.request-log.buffer-size:8192}") int bufferSize,
+                      @Value("${soprafs21.request-log.sample-rates:}") List<String> sampleRates) {
+        this(bufferSize, sampleRates, null);
+    }
+
+    RequestLog(int bufferSize, List<String> sampleRates, Consumer<String> sink) {
+        this.buffer = new RingBuffer<>(bufferSize);
+        for (String sampleRate : sampleRates) {
+            if (!sampleRate.isBlank()) {
+                String[] eventAndRate = sampleRate.trim().split("=");
+                if (eventAndRate.length != 2) {
+                    throw new IllegalArgumentException("The sample rate " + sampleRate + " is not of the form <event>=<rate>");
+                }
+                this.sampleRates.put(eventAndRate[0].trim(), Double.parseDouble(eventAndRate[1].trim()));
+            }
+        }
+        this.sink = sink != null ? sink : log::info;
+        this.writer = new Thread(this::write, "request-log-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Logs an event with the given alternating keys and values, e.g. {@code log("user.login", "userId", 1)}.
+     * Never waits: the event is dropped if the buffer is full.
+     */
+    public void log(String event, Object... keysAndValues) {
+        Double sampleRate = sampleRates.get(event);
+        if (sampleRate != null && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            sampledOut.incrementAndGet();
+            return;
+        }
+        for (int i = 0; i + 1 < keysAndValues.length; i += 2) {
+            if (SECRETS.contains(keysAndValues[i])) {
+                keysAndValues[i + 1] = REDACTED;
+            }
+        }
+        if (!buffer.offer(new Event(System.currentTimeMillis(), Thread.currentThread().getName(), event, keysAndValues))) {
+            dropped.incrementAndGet();
+        }
+        else if (sleeping) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    private void write() {
+        StringBuilder line = new StringBuilder(256);
+        while (running) {
+            if (!writeAvailable(line)) {
+                sleeping = true;
+                // checked after sleeping is set: an event offered in between is either seen here, or its producer
+                // sees sleeping and unparks the writer
+                if (buffer.isEmpty() && running) {
+                    LockSupport.park(this);
+                }
+                sleeping = false;
+            }
+        }
+        writeAvailable(line);
+    }
+
+    // writes the events in the buffer, returns false if there were none
+    private boolean writeAvailable(StringBuilder line) {
+        boolean any = false;
+        for (Event event = buffer.poll(); event != null; event = buffer.poll()) {
+            any = true;
+            line.setLength(0);
+            event.format(line);
+            try {
+                sink.accept(line.toString());
+                written.incrementAndGet();
+            }
+            catch (RuntimeException e) {
+                // the writer must keep running, the event is lost like a dropped one
+                dropped.incrementAndGet();
+            }
+        }
+        return any;
+    }
+
+    /**
+     * Writes the remaining events and stops the writer.
+     */
+    @Override
+    public void destroy() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(writer);
+        writer.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public long getSampledOutCount() {
+        return sampledOut.get();
+    }
+
+    public long getWrittenCount() {
+        return written.get();
+    }
+
+    private static final class Event {
+        private final long time;
+        private final String thread;
+        private final String name;
+        private final Object[] keysAndValues;
+
+        private Event(long time, String thread, String name, Object[] keysAndValues) {
+            this.time = time;
+            this.thread = thread;
+            this.name = name;
+            this.keysAndValues = keysAndValues;
+        }
+
+        // time=... thread=... event=... key=value ..., values with spaces or quotes are quoted
+        private void format(StringBuilder line) {
+            line.append("time=").append(Instant.ofEpochMilli(time));
+            appendField(line, "thread", thread);
+            appendField(line, "event", name);
+            for (int i = 0; i + 1 < keysAndValues.length; i += 2) {
+                appendField(line, String.valueOf(keysAndValues[i]), keysAndValues[i + 1]);
+            }
+        }
+
+        private static void appendField(StringBuilder line, String key, Object value) {
+            String text = String.valueOf(value);
+            line.append(' ').append(key).append('=');
+            if (text.isEmpty() || text.indexOf(' ') >= 0 || text.indexOf('"') >= 0 || text.indexOf('=') >= 0) {
+                line.append('"').append(text.replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+            }
+            else {
+                line.append(text);
+            }
+        }
+    }
+}
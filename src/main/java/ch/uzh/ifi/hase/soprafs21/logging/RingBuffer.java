@@ -0,0 +1,79 @@
+package ch.uzh.ifi.hase.soprafs21.logging;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Ring Buffer
+ * A bounded queue for many producers and a single consumer without locks: a producer claims the next position with
+ * compare-and-set and then publishes its element into the slot, the consumer takes the elements in order and clears
+ * their slots. A producer that finds the buffer full does not wait, offer returns false instead.
+ */
+final class RingBuffer<E> {
+
+    private final AtomicReferenceArray<E> slots;
+
+    private final int mask;
+
+    // the next position a producer claims
+    private final AtomicLong tail = new AtomicLong();
+
+    // the next position the consumer takes, only written by the consumer
+    private final AtomicLong head = new AtomicLong();
+
+    RingBuffer(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("The capacity of a ring buffer must be a power of two");
+        }
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Adds the element, unless the buffer is full.
+     *
+     * @return false if the buffer is full
+     */
+    boolean offer(E element) {
+        while (true) {
+            long position = tail.get();
+            // the slot of position was cleared before the consumer moved past position - capacity
+            if (position - head.get() > mask) {
+                return false;
+            }
+            if (tail.compareAndSet(position, position + 1)) {
+                slots.lazySet((int) position & mask, element);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Takes the oldest element. Only called by the consumer.
+     *
+     * @return null if the buffer is empty, or the oldest element has been claimed but not published yet
+     */
+    E poll() {
+        long position = head.get();
+        int slot = (int) position & mask;
+        E element = slots.get(slot);
+        if (element == null) {
+            return null;
+        }
+        slots.lazySet(slot, null);
+        head.lazySet(position + 1);
+        return element;
+    }
+
+    /**
+     * Returns whether no position has been claimed since the consumer took the last element. Unlike a null from poll,
+     * true also means that no element is about to be published.
+     */
+    boolean isEmpty() {
+        return tail.get() == head.get();
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+}
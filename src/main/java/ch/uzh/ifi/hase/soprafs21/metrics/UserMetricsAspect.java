@@ -0,0 +1,101 @@
+package ch.uzh.ifi.hase.soprafs21.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * User Metrics Aspect
+ * This class times every public UserService method ("user.service") and every UserRepository query ("user.repository").
+ * Authentication failures and conflicts raised as ResponseStatusException by the UserService are counted
+ * as "user.auth.failures" and "user.conflicts".
+ * The meters are looked up once per method and outcome and then reused, so recording only costs a map lookup.
+ */
+@Aspect
+@Component
+public class UserMetricsAspect {
+
+    static final String SERVICE_TIMER = "user.service";
+    static final String REPOSITORY_TIMER = "user.repository";
+    static final String AUTH_FAILURE_COUNTER = "user.auth.failures";
+    static final String CONFLICT_COUNTER = "user.conflicts";
+
+    private final MeterRegistry meterRegistry;
+
+    // successful calls are looked up by method name only, failures also by exception
+    private final Map<String, Timer> serviceTimers = new ConcurrentHashMap<>();
+    private final Map<String, Timer> repositoryTimers = new ConcurrentHashMap<>();
+    private final Map<String, Timer> failureTimers = new ConcurrentHashMap<>();
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    public UserMetricsAspect(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Around("execution(public * ch.uzh.ifi.hase.soprafs21.service.UserService.*(..))")
+    public Object timeUserService(ProceedingJoinPoint joinPoint) throws Throwable {
+        String method = joinPoint.getSignature().getName();
+        try {
+            return time(SERVICE_TIMER, serviceTimers, method, joinPoint);
+        }
+        catch (ResponseStatusException e) {
+            countError(method, e.getStatus());
+            throw e;
+        }
+    }
+
+    @Around("execution(* ch.uzh.ifi.hase.soprafs21.repository.UserRepository+.*(..))")
+    public Object timeUserRepository(ProceedingJoinPoint joinPoint) throws Throwable {
+        return time(REPOSITORY_TIMER, repositoryTimers, joinPoint.getSignature().getName(), joinPoint);
+    }
+
+    private Object time(String name, Map<String, Timer> timers, String method, ProceedingJoinPoint joinPoint) throws Throwable {
+        long start = System.nanoTime();
+        try {
+            Object result = joinPoint.proceed();
+            timers.computeIfAbsent(method, key -> timer(name, method, "none"))
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return result;
+        }
+        catch (Throwable e) {
+            String exception = e.getClass().getSimpleName();
+            failureTimers.computeIfAbsent(name + '#' + method + '#' + exception, key -> timer(name, method, exception))
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            throw e;
+        }
+    }
+
+    private Timer timer(String name, String method, String exception) {
+        return Timer.builder(name)
+                .tag("method", method)
+                .tag("exception", exception)
+                .register(meterRegistry);
+    }
+
+    private void countError(String method, HttpStatus status) {
+        String name;
+        if (status == HttpStatus.CONFLICT) {
+            name = CONFLICT_COUNTER;
+        }
+        else if (status == HttpStatus.BAD_REQUEST
+                && ("authenticateToken".equals(method) || "checkIfCredentialsExist".equals(method))) {
+            name = AUTH_FAILURE_COUNTER;
+        }
+        else {
+            return;
+        }
+        counters.computeIfAbsent(name + '#' + method, key -> Counter.builder(name)
+                .tag("method", method)
+                .register(meterRegistry)).increment();
+    }
+}
@@ -0,0 +1,152 @@
+package ch.uzh.ifi.hase.soprafs21.metrics;
+
+import ch.uzh.ifi.hase.soprafs21.entity.User;
+import ch.uzh.ifi.hase.soprafs21.logging.RequestLog;
+import ch.uzh.ifi.hase.soprafs21.ratelimit.RateLimitFilter;
+import ch.uzh.ifi.hase.soprafs21.ratelimit.RateLimiter;
+import ch.uzh.ifi.hase.soprafs21.service.PasswordHasher;
+import ch.uzh.ifi.hase.soprafs21.service.PresenceRegistry;
+import ch.uzh.ifi.hase.soprafs21.service.TokenCache;
+import ch.uzh.ifi.hase.soprafs21.service.TokenIssuer;
+import ch.uzh.ifi.hase.soprafs21.service.UsernameFilter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+
+/**
+ * User Metrics Binder
+ * Publishes the counters that the TokenCache, the TokenIssuer, the PasswordHasher, the PresenceRegistry, the UsernameFilter, the
+ * RateLimitFilter, the RequestLog and the second-level cache of the users keep themselves, so that they show up next to the request and
+ * query timers on the metrics endpoint.
+ */
+@Component
+public class UserMetricsBinder implements MeterBinder {
+
+    private final TokenCache tokenCache;
+
+    private final TokenIssuer tokenIssuer;
+
+    private final PasswordHasher passwordHasher;
+
+    private final RequestLog requestLog;
+
+    // not in the reactive profile
+    private final ObjectProvider<PresenceRegistry> presenceRegistry;
+
+    private final ObjectProvider<UsernameFilter> usernameFilter;
+
+    // only if soprafs21.rate-limit.enabled
+    private final ObjectProvider<RateLimitFilter> rateLimitFilter;
+
+    // not in the reactive profile
+    private final ObjectProvider<EntityManagerFactory> entityManagerFactory;
+
+    public UserMetricsBinder(TokenCache tokenCache, TokenIssuer tokenIssuer, PasswordHasher passwordHasher, RequestLog requestLog,
+                             ObjectProvider<PresenceRegistry> presenceRegistry, ObjectProvider<UsernameFilter> usernameFilter,
+                             ObjectProvider<RateLimitFilter> rateLimitFilter,
+                             ObjectProvider<EntityManagerFactory> entityManagerFactory) {
+        this.tokenCache = tokenCache;
+        this.tokenIssuer = tokenIssuer;
+        this.passwordHasher = passwordHasher;
+        this.requestLog = requestLog;
+        this.presenceRegistry = presenceRegistry;
+        this.usernameFilter = usernameFilter;
+        this.rateLimitFilter = rateLimitFilter;
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("user.token.cache.requests", tokenCache, TokenCache::getHitCount)
+                .tag("result", "hit").register(registry);
+        FunctionCounter.builder("user.token.cache.requests", tokenCache, TokenCache::getMissCount)
+                .tag("result", "miss").register(registry);
+        FunctionCounter.builder("user.token.cache.evictions", tokenCache, TokenCache::getEvictionCount)
+                .register(registry);
+        Gauge.builder("user.token.cache.size", tokenCache, TokenCache::size)
+                .register(registry);
+        FunctionCounter.builder("user.token.verifications", tokenIssuer, TokenIssuer::getVerificationCount)
+                .register(registry);
+        FunctionCounter.builder("user.token.rejections", tokenIssuer, TokenIssuer::getRejectionCount)
+                .register(registry);
+        Gauge.builder("user.token.revocations", tokenIssuer, TokenIssuer::getRevocationCount)
+                .register(registry);
+
+        Gauge.builder("user.password.hashing.queue", passwordHasher, PasswordHasher::getQueueDepth)
+                .register(registry);
+        Gauge.builder("user.password.hashing.active", passwordHasher, PasswordHasher::getActiveCount)
+                .register(registry);
+        FunctionTimer.builder("user.password.verification", passwordHasher,
+                PasswordHasher::getVerificationCount, PasswordHasher::getTotalVerificationNanos, TimeUnit.NANOSECONDS)
+                .register(registry);
+        FunctionCounter.builder("user.password.hashing.rejections", passwordHasher, PasswordHasher::getRejectionCount)
+                .register(registry);
+
+        FunctionCounter.builder("user.request.log.events", requestLog, RequestLog::getWrittenCount)
+                .tag("result", "written").register(registry);
+        FunctionCounter.builder("user.request.log.events", requestLog, RequestLog::getSampledOutCount)
+                .tag("result", "sampled-out").register(registry);
+        FunctionCounter.builder("user.request.log.events", requestLog, RequestLog::getDroppedCount)
+                .tag("result", "dropped").register(registry);
+
+        presenceRegistry.ifAvailable(presence -> {
+            Gauge.builder("user.presence.pending", presence, PresenceRegistry::getPendingCount)
+                    .register(registry);
+            FunctionCounter.builder("user.presence.flushes", presence, PresenceRegistry::getFlushCount)
+                    .register(registry);
+            FunctionCounter.builder("user.presence.flushed", presence, PresenceRegistry::getFlushedChangeCount)
+                    .register(registry);
+        });
+
+        usernameFilter.ifAvailable(filter -> {
+            Gauge.builder("user.username.filter.size", filter, UsernameFilter::getSize)
+                    .register(registry);
+            FunctionCounter.builder("user.username.filter.lookups", filter, UsernameFilter::getSkippedLookupCount)
+                    .tag("result", "skipped").register(registry);
+            FunctionCounter.builder("user.username.filter.lookups", filter, UsernameFilter::getFalsePositiveCount)
+                    .tag("result", "false-positive").register(registry);
+        });
+
+        rateLimitFilter.ifAvailable(filter -> {
+            Gauge.builder("user.rate.limit.buckets", filter.getRateLimiter(), RateLimiter::size)
+                    .register(registry);
+            FunctionCounter.builder("user.rate.limit.rejections", filter.getRateLimiter(), RateLimiter::getRejectionCount)
+                    .register(registry);
+        });
+
+        entityManagerFactory.ifAvailable(factory -> {
+            Statistics statistics = factory.unwrap(SessionFactory.class).getStatistics();
+            bindCacheRegion(registry, statistics, User.CACHE_REGION);
+            bindCacheRegion(registry, statistics, User.LOOKUP_CACHE_REGION);
+        });
+    }
+
+    private static void bindCacheRegion(MeterRegistry registry, Statistics statistics, String region) {
+        FunctionCounter.builder("user.cache.requests", statistics, s -> count(s, region, CacheRegionStatistics::getHitCount))
+                .tag("region", region).tag("result", "hit").register(registry);
+        FunctionCounter.builder("user.cache.requests", statistics, s -> count(s, region, CacheRegionStatistics::getMissCount))
+                .tag("region", region).tag("result", "miss").register(registry);
+        Gauge.builder("user.cache.hit.ratio", statistics, s -> {
+            long hits = count(s, region, CacheRegionStatistics::getHitCount);
+            long requests = hits + count(s, region, CacheRegionStatistics::getMissCount);
+            return requests == 0 ? 0 : (double) hits / requests;
+        }).tag("region", region).register(registry);
+    }
+
+    // the statistics of a query cache region only exist once it has been used
+    private static long count(Statistics statistics, String region, ToLongFunction<CacheRegionStatistics> counter) {
+        CacheRegionStatistics regionStatistics = statistics.getCacheRegionStatistics(region);
+        return regionStatistics == null ? 0 : counter.applyAsLong(regionStatistics);
+    }
+}
@@ -0,0 +1,145 @@
+package ch.uzh.ifi.hase.soprafs21.ratelimit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.UrlPathHelper;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rate Limit Filter
+ * This filter rejects requests of clients that exceed the limit of the endpoint with 429 TOO_MANY_REQUESTS and a
+ * Retry-After header, before the UserController (and the database) is reached.
+ * Every request takes a permit from the bucket of its token (if it has one) and from the bucket of its remote address,
+ * which allows address-factor times the limit, since several clients can share an address. The address bucket also
+ * limits clients that send a new (invalid) token with every request.
+ * The limits are configured per endpoint with soprafs21.rate-limit.limits, see application.properties.
+ */
+@Component
+@Profile("!reactive")
+@ConditionalOnProperty(name = "soprafs21.rate-limit.enabled", havingValue = "true", matchIfMissing = true)
+// after the metrics filter, so that rejected requests are still timed
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    private final List<Rule> rules;
+
+    private final RateLimiter rateLimiter;
+
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+
+    private final UrlPathHelper urlPathHelper = new UrlPathHelper();
+
+    @Autowired
+    public RateLimitFilter(@Value("${soprafs21.rate-limit.limits:}") List<String> limits,
+                           @Value("${soprafs21.rate-limit.address-factor:4}") int addressFactor,
+                           @Value("${soprafs21.rate-limit.max-buckets:100000}") int maxBuckets,
+                           @Value("${soprafs21.rate-limit.idle-seconds:60}") long idleSeconds) {
+        this(limits, addressFactor, new RateLimiter(maxBuckets, idleSeconds));
+    }
+
+    RateLimitFilter(List<String> limits, int addressFactor, RateLimiter rateLimiter) {
+        if (addressFactor <= 0) {
+            throw new IllegalArgumentException("The address factor of the rate limits must be positive");
+        }
+        this.rules = new ArrayList<>(limits.size());
+        for (String limit : limits) {
+            if (!limit.isBlank()) {
+                this.rules.add(Rule.parse(limit.trim(), addressFactor));
+            }
+        }
+        this.rateLimiter = rateLimiter;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        Rule rule = findRule(request);
+        if (rule != null) {
+            String token = request.getHeader("token");
+            String addressKey = rule.name + " address " + request.getRemoteAddr();
+            long wait = rateLimiter.acquire(addressKey, rule.addressLimit);
+            if (wait == 0 && token != null) {
+                wait = rateLimiter.acquire(rule.name + " token " + token, rule.limit);
+                // a request rejected for its token must not use up the permits of the other clients of the address
+                if (wait > 0) {
+                    rateLimiter.release(addressKey);
+                }
+            }
+            if (wait > 0) {
+                response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+                // whole seconds, rounded up
+                response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(TimeUnit.NANOSECONDS.toSeconds(wait - 1) + 1));
+                return;
+            }
+        }
+        filterChain.doFilter(request, response);
+    }
+
+    // the first rule that matches the method and the path, null if the request is not limited
+    private Rule findRule(HttpServletRequest request) {
+        String path = urlPathHelper.getPathWithinApplication(request);
+        for (Rule rule : rules) {
+            if ((rule.method == null || rule.method.equals(request.getMethod())) && pathMatcher.match(rule.pathPattern, path)) {
+                return rule;
+            }
+        }
+        return null;
+    }
+
+    @Scheduled(fixedDelayString = "#{${soprafs21.rate-limit.idle-seconds:60} * 1000}")
+    public void evictIdleBuckets() {
+        rateLimiter.evictIdle();
+    }
+
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    private static final class Rule {
+        private final String name;
+        private final String method;
+        private final String pathPattern;
+        private final RateLimiter.Limit limit;
+        private final RateLimiter.Limit addressLimit;
+
+        private Rule(String name, String method, String pathPattern, RateLimiter.Limit limit, RateLimiter.Limit addressLimit) {
+            this.name = name;
+            this.method = method;
+            this.pathPattern = pathPattern;
+            this.limit = limit;
+            this.addressLimit = addressLimit;
+        }
+
+        // <method or *> <path pattern>=<permits per second>:<burst>, e.g. GET /users/*=50:100
+        private static Rule parse(String limit, int addressFactor) {
+            String[] endpointAndRate = limit.split("=");
+            String[] methodAndPath = endpointAndRate.length == 2 ? endpointAndRate[0].trim().split("\\s+") : new String[0];
+            String[] rateAndBurst = endpointAndRate.length == 2 ? endpointAndRate[1].trim().split(":") : new String[0];
+            if (methodAndPath.length != 2 || rateAndBurst.length != 2) {
+                throw new IllegalArgumentException("The rate limit " + limit + " is not of the form <method> <path>=<rate>:<burst>");
+            }
+            double rate = Double.parseDouble(rateAndBurst[0]);
+            int burst = Integer.parseInt(rateAndBurst[1]);
+            return new Rule(endpointAndRate[0].trim(), "*".equals(methodAndPath[0]) ? null : methodAndPath[0], methodAndPath[1],
+                    new RateLimiter.Limit(rate, burst), new RateLimiter.Limit(rate * addressFactor, burst * addressFactor));
+        }
+    }
+}
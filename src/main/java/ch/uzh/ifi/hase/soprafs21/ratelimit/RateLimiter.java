@@ -0,0 +1,208 @@
+package ch.uzh.ifi.hase.soprafs21.ratelimit;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Rate Limiter
+ * This class keeps a token bucket per key (e.g. client and endpoint). A bucket is a single time stamp, the time at which
+ * it would be full again, which is advanced with compare-and-set; no request ever waits for a lock.
+ * Buckets that have been full for the idle time are evicted, and no more than maxBuckets buckets are kept: when
+ * there is no room for the bucket of a new key, one scan evicts the idle buckets and, up to a sixteenth of
+ * maxBuckets, the buckets that were used least recently. A flood of new keys therefore cannot lock out the clients
+ * that come after it, and pays for a scan only once per batch of evictions rather than with every new key.
+ */
+public class RateLimiter {
+
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    // held by the one thread that makes room, the others add their bucket without waiting for it
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    private final AtomicLong rejections = new AtomicLong();
+
+    private final int maxBuckets;
+    private final int evictionBatch;
+    private final long idleNanos;
+    private final LongSupplier clock;
+
+    public RateLimiter(int maxBuckets, long idleSeconds) {
+        this(maxBuckets, TimeUnit.SECONDS.toNanos(idleSeconds), System::nanoTime);
+    }
+
+    RateLimiter(int maxBuckets, long idleNanos, LongSupplier clock) {
+        if (maxBuckets <= 0) {
+            throw new IllegalArgumentException("The rate limiter needs a positive maximum number of buckets");
+        }
+        this.maxBuckets = maxBuckets;
+        this.evictionBatch = Math.max(1, maxBuckets / 16);
+        this.idleNanos = idleNanos;
+        this.clock = clock;
+    }
+
+    /**
+     * Takes a permit from the bucket of the given key.
+     *
+     * @return 0 if the request is permitted, otherwise the nanoseconds until the next permit is available
+     */
+    public long acquire(String key, Limit limit) {
+        long now = clock.getAsLong();
+        Bucket bucket = buckets.get(key);
+        if (bucket == null) {
+            if (buckets.size() >= maxBuckets) {
+                makeRoom(now);
+            }
+            bucket = buckets.computeIfAbsent(key, k -> new Bucket(limit, now));
+        }
+        long wait = bucket.acquire(now);
+        if (wait > 0) {
+            rejections.incrementAndGet();
+        }
+        return wait;
+    }
+
+    /**
+     * Gives back a permit taken from the bucket of the given key, e.g. when the request is rejected by another bucket.
+     */
+    public void release(String key) {
+        Bucket bucket = buckets.get(key);
+        if (bucket != null) {
+            bucket.release();
+        }
+    }
+
+    /**
+     * Removes the buckets that have been full for at least the idle time, they would permit the same requests
+     * as a new bucket.
+     *
+     * @return the number of evicted buckets
+     */
+    public int evictIdle() {
+        long now = clock.getAsLong();
+        int evicted = 0;
+        for (Map.Entry<String, Bucket> entry : buckets.entrySet()) {
+            if (entry.getValue().isIdle(now, idleNanos) && buckets.remove(entry.getKey(), entry.getValue())) {
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    // evicts the idle buckets and tops them up to evictionBatch with the buckets that are full again the soonest,
+    // they have the fewest permits to give back to their keys
+    private void makeRoom(long now) {
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            if (buckets.size() < maxBuckets) {
+                return;
+            }
+            // the evictionBatch least recently used buckets seen so far, the most recently used one on top
+            PriorityQueue<Candidate> leastRecentlyUsed = new PriorityQueue<>(evictionBatch + 1,
+                    Comparator.comparingLong((Candidate candidate) -> candidate.fullAt).reversed());
+            int evicted = 0;
+            for (Map.Entry<String, Bucket> entry : buckets.entrySet()) {
+                long fullAt = entry.getValue().fullAt.get();
+                if (now - fullAt >= idleNanos) {
+                    if (buckets.remove(entry.getKey(), entry.getValue())) {
+                        evicted++;
+                    }
+                    continue;
+                }
+                leastRecentlyUsed.add(new Candidate(entry.getKey(), entry.getValue(), fullAt));
+                if (leastRecentlyUsed.size() > evictionBatch) {
+                    leastRecentlyUsed.poll();
+                }
+            }
+            for (Candidate candidate : leastRecentlyUsed) {
+                if (evicted >= evictionBatch) {
+                    break;
+                }
+                if (buckets.remove(candidate.key, candidate.bucket)) {
+                    evicted++;
+                }
+            }
+        }
+        finally {
+            evictionLock.unlock();
+        }
+    }
+
+    public int size() {
+        return buckets.size();
+    }
+
+    public long getRejectionCount() {
+        return rejections.get();
+    }
+
+    /**
+     * A rate of permits per second, of which up to burst permits can be taken at once.
+     */
+    public static final class Limit {
+        private final long intervalNanos;
+        private final long toleranceNanos;
+
+        public Limit(double permitsPerSecond, int burst) {
+            if (permitsPerSecond <= 0 || burst <= 0) {
+                throw new IllegalArgumentException("A rate limit needs a positive rate and burst");
+            }
+            this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+            this.toleranceNanos = intervalNanos * (burst - 1);
+        }
+    }
+
+    // a bucket with the time it was full again when it was looked at, which does not change while it is compared
+    private static final class Candidate {
+        private final String key;
+        private final Bucket bucket;
+        private final long fullAt;
+
+        private Candidate(String key, Bucket bucket, long fullAt) {
+            this.key = key;
+            this.bucket = bucket;
+            this.fullAt = fullAt;
+        }
+    }
+
+    private static final class Bucket {
+        private final Limit limit;
+
+        // the time at which the bucket is full again, a permit is available as long as it is at most the tolerance ahead
+        private final AtomicLong fullAt;
+
+        private Bucket(Limit limit, long now) {
+            this.limit = limit;
+            this.fullAt = new AtomicLong(now);
+        }
+
+        private long acquire(long now) {
+            while (true) {
+                long current = fullAt.get();
+                long start = Math.max(current, now);
+                long wait = start - limit.toleranceNanos - now;
+                if (wait > 0) {
+                    return wait;
+                }
+                if (fullAt.compareAndSet(current, start + limit.intervalNanos)) {
+                    return 0;
+                }
+            }
+        }
+
+        private void release() {
+            fullAt.addAndGet(-limit.intervalNanos);
+        }
+
+        private boolean isIdle(long now, long idleNanos) {
+            return now - fullAt.get() >= idleNanos;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package ch.uzh.ifi.hase.soprafs21.repository;
+
+import ch.uzh.ifi.hase.soprafs21.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs21.entity.User;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+
+import static org.springframework.data.relational.core.query.Criteria.where;
+import static org.springframework.data.relational.core.query.Query.empty;
+import static org.springframework.data.relational.core.query.Query.query;
+
+/**
+ * Reactive counterpart of the UserRepository, used by the reactive profile.
+ * The queries run on R2DBC and emit their rows as they are read, without blocking the calling thread.
+ * This is a class on top of the R2dbcEntityTemplate rather than a Spring Data interface, because the JPA repository
+ * scanning would otherwise claim (and reject) a reactive repository for the JPA entity User.
+ */
+@Repository("reactiveUserRepository")
+@Profile("reactive")
+public class ReactiveUserRepository {
+
+    private final R2dbcEntityTemplate template;
+
+    public ReactiveUserRepository(R2dbcEntityTemplate template) {
+        this.template = template;
+    }
+
+    public Mono<User> findByUsername(String username) {
+        return template.selectOne(query(where("username").is(username)), User.class);
+    }
+
+    public Mono<User> findById(Long id) {
+        return template.selectOne(query(where("id").is(id)), User.class);
+    }
+
+    public Flux<User> findAllById(Collection<Long> ids) {
+        return template.select(query(where("id").in(ids)), User.class);
+    }
+
+    public Mono<User> findByToken(String token) {
+        return template.selectOne(query(where("token").is(token)), User.class);
+    }
+
+    public Flux<String> findExistingUsernames(Collection<String> usernames) {
+        return template.getDatabaseClient()
+                .sql("select \"username\" from \"user\" where \"username\" in (:usernames)")
+                .bind("usernames", usernames)
+                .map(row -> row.get("username", String.class))
+                .all();
+    }
+
+    // keyset pagination: only one page of users is read from the database
+    public Flux<User> findByIdGreaterThanOrderByIdAsc(Long id, int limit) {
+        return template.select(query(where("id").greaterThan(id)).sort(Sort.by("id")).limit(limit), User.class);
+    }
+
+    public Flux<User> findByStatusAndIdGreaterThanOrderByIdAsc(UserStatus status, Long id, int limit) {
+        return template.select(query(where("status").is(status).and("id").greaterThan(id)).sort(Sort.by("id")).limit(limit),
+                User.class);
+    }
+
+    // rows are requested from the database as the subscriber consumes them
+    public Flux<User> streamAllByOrderByIdAsc() {
+        return template.select(empty().sort(Sort.by("id")), User.class);
+    }
+
+    // the version is maintained like JPA does (0 when inserted, incremented by every update)
+    public Mono<User> save(User user) {
+        if (user.getId() == null) {
+            user.setVersion(0L);
+            return template.insert(user);
+        }
+        user.setVersion(user.getVersion() == null ? 0L : user.getVersion() + 1);
+        return template.update(user);
+    }
+
+    public Flux<User> saveAll(Iterable<User> users) {
+        return Flux.fromIterable(users).concatMap(this::save);
+    }
+
+    public Mono<Void> deleteAll() {
+        return template.delete(User.class).all().then();
+    }
+}
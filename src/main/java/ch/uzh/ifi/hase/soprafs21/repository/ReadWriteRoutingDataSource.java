@@ -0,0 +1,33 @@
+package ch.uzh.ifi.hase.soprafs21.repository;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.Map;
+
+/**
+ * Read Write Routing Data Source
+ * This data source hands out the connections of the replica inside read-only transactions (e.g.
+ * {@code @Transactional(readOnly = true)} in the UserService) and the connections of the primary everywhere else:
+ * in read-write transactions, for the schema and outside of transactions.
+ * The transaction manager asks for the connection before it marks the transaction read-only, so this data source
+ * has to be wrapped in a LazyConnectionDataSourceProxy, which only fetches the connection for the first statement.
+ */
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource {
+
+    enum Route {
+        PRIMARY, REPLICA
+    }
+
+    public ReadWriteRoutingDataSource(DataSource primary, DataSource replica) {
+        setTargetDataSources(Map.of(Route.PRIMARY, primary, Route.REPLICA, replica));
+        setDefaultTargetDataSource(primary);
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return TransactionSynchronizationManager.isCurrentTransactionReadOnly() ? Route.REPLICA : Route.PRIMARY;
+    }
+}
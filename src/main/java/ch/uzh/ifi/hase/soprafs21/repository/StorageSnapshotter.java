@@ -0,0 +1,116 @@
+package ch.uzh.ifi.hase.soprafs21.repository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Storage Snapshotter
+ * This class takes online snapshots of the file database of the durable profile with H2's BACKUP TO, which copies the
+ * database files while requests keep reading and writing. The snapshots are zip files in the snapshots directory,
+ * named by their time, and only the newest snapshots-kept are kept.
+ * If the database files are missing at startup, the newest snapshot is restored (see DurableStorageConfiguration).
+ */
+@Component
+@Profile("durable")
+// a lazy bean would never be created, and so never scheduled
+@Lazy(false)
+public class StorageSnapshotter {
+
+    // in UTC, local times would not sort by time across a change of the daylight saving time
+    private static final DateTimeFormatter SNAPSHOT_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS")
+            .withZone(ZoneOffset.UTC);
+
+    private static final String SNAPSHOT_PREFIX = "users-";
+    private static final String SNAPSHOT_SUFFIX = ".zip";
+
+    private final Logger log = LoggerFactory.getLogger(StorageSnapshotter.class);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final Path snapshotDirectory;
+
+    private final int snapshotsKept;
+
+    public StorageSnapshotter(JdbcTemplate jdbcTemplate,
+                              @Value("${soprafs21.storage.directory:./data}") String directory,
+                              @Value("${soprafs21.storage.snapshots-kept:3}") int snapshotsKept) {
+        if (snapshotsKept <= 0) {
+            throw new IllegalArgumentException("At least one snapshot must be kept");
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.snapshotDirectory = getSnapshotDirectory(directory);
+        this.snapshotsKept = snapshotsKept;
+    }
+
+    /**
+     * Writes a snapshot of the database and deletes the snapshots that are no longer kept.
+     *
+     * @return the new snapshot
+     */
+    @Scheduled(initialDelayString = "${soprafs21.storage.snapshot-interval-ms:3600000}",
+            fixedDelayString = "${soprafs21.storage.snapshot-interval-ms:3600000}")
+    public synchronized Path snapshot() {
+        long start = System.nanoTime();
+        Path snapshot = snapshotDirectory.resolve(SNAPSHOT_PREFIX + SNAPSHOT_TIME.format(Instant.now()) + SNAPSHOT_SUFFIX);
+        try {
+            Files.createDirectories(snapshotDirectory);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        jdbcTemplate.execute("BACKUP TO '" + snapshot.toAbsolutePath().toString().replace("'", "''") + "'");
+
+        List<Path> snapshots = findSnapshots(snapshotDirectory);
+        for (Path oldSnapshot : snapshots.subList(0, Math.max(0, snapshots.size() - snapshotsKept))) {
+            try {
+                Files.deleteIfExists(oldSnapshot);
+            }
+            catch (IOException e) {
+                log.warn("Could not delete the snapshot {}", oldSnapshot, e);
+            }
+        }
+        log.info("Wrote the snapshot {} in {} ms", snapshot, (System.nanoTime() - start) / 1_000_000);
+        return snapshot;
+    }
+
+    public static Path getSnapshotDirectory(String directory) {
+        return Paths.get(directory, "snapshots");
+    }
+
+    /**
+     * Returns the snapshots in the given directory, oldest first.
+     */
+    public static List<Path> findSnapshots(Path snapshotDirectory) {
+        if (!Files.isDirectory(snapshotDirectory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(snapshotDirectory)) {
+            // the names sort by time
+            return files.filter(file -> {
+                String name = file.getFileName().toString();
+                return name.startsWith(SNAPSHOT_PREFIX) && name.endsWith(SNAPSHOT_SUFFIX);
+            }).sorted().collect(Collectors.toList());
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
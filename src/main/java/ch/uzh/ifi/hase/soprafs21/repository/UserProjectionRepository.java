@@ -0,0 +1,24 @@
+package ch.uzh.ifi.hase.soprafs21.repository;
+
+import ch.uzh.ifi.hase.soprafs21.constant.UserField;
+import ch.uzh.ifi.hase.soprafs21.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs21.entity.User;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Projection queries of the UserRepository: only the given fields (plus the id and the version) are selected, and the
+ * results are plain User objects with the other fields unset, not entities managed by the persistence context.
+ */
+public interface UserProjectionRepository {
+
+    // keyset pagination like UserRepository.findByIdGreaterThanOrderByIdAsc, status is optional
+    List<User> findProjectedByIdGreaterThan(Set<UserField> fields, UserStatus status, Long id, int limit);
+
+    User findProjectedById(Set<UserField> fields, Long id);
+
+    // must be consumed inside a transaction and closed afterwards, like UserRepository.streamAllByOrderByIdAsc
+    Stream<User> streamProjected(Set<UserField> fields);
+}
@@ -0,0 +1,91 @@
+package ch.uzh.ifi.hase.soprafs21.repository;
+
+import ch.uzh.ifi.hase.soprafs21.constant.UserField;
+import ch.uzh.ifi.hase.soprafs21.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs21.entity.User;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Tuple;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+
+/**
+ * Implementation of the UserProjectionRepository with criteria queries that select a tuple per user.
+ */
+public class UserProjectionRepositoryImpl implements UserProjectionRepository {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<User> findProjectedByIdGreaterThan(Set<UserField> fields, UserStatus status, Long id, int limit) {
+        TypedQuery<Tuple> query = createQuery(fields, (builder, user) -> status == null
+                ? builder.greaterThan(user.<Long>get("id"), id)
+                : builder.and(builder.equal(user.get("status"), status), builder.greaterThan(user.<Long>get("id"), id)));
+        List<Tuple> tuples = query.setMaxResults(limit).getResultList();
+        List<User> users = new ArrayList<>(tuples.size());
+        for (Tuple tuple : tuples) {
+            users.add(toUser(fields, tuple));
+        }
+        return users;
+    }
+
+    @Override
+    public User findProjectedById(Set<UserField> fields, Long id) {
+        List<Tuple> tuples = createQuery(fields, (builder, user) -> builder.equal(user.get("id"), id)).getResultList();
+        return tuples.isEmpty() ? null : toUser(fields, tuples.get(0));
+    }
+
+    @Override
+    public Stream<User> streamProjected(Set<UserField> fields) {
+        return createQuery(fields, null)
+                .setHint(HINT_FETCH_SIZE, UserRepository.EXPORT_FETCH_SIZE)
+                .getResultStream()
+                .map(tuple -> toUser(fields, tuple));
+    }
+
+    // select id, version, <fields> from user where <restriction> order by id
+    private TypedQuery<Tuple> createQuery(Set<UserField> fields, Restriction restriction) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = builder.createTupleQuery();
+        Root<User> user = query.from(User.class);
+
+        List<Selection<?>> selections = new ArrayList<>(fields.size() + 2);
+        selections.add(user.get("id"));
+        selections.add(user.get("version"));
+        for (UserField field : fields) {
+            selections.add(user.get(field.getName()));
+        }
+        query.multiselect(selections).orderBy(builder.asc(user.get("id")));
+        if (restriction != null) {
+            query.where(restriction.toPredicate(builder, user));
+        }
+        return entityManager.createQuery(query);
+    }
+
+    private static User toUser(Set<UserField> fields, Tuple tuple) {
+        User user = new User();
+        user.setId(tuple.get(0, Long.class));
+        user.setVersion(tuple.get(1, Long.class));
+        int index = 2;
+        for (UserField field : fields) {
+            field.set(user, tuple.get(index++));
+        }
+        return user;
+    }
+
+    private interface Restriction {
+        Predicate toPredicate(CriteriaBuilder builder, Root<User> user);
+    }
+}
@@ -1,21 +1,69 @@
 package ch.uzh.ifi.hase.soprafs21.repository;
 
+import ch.uzh.ifi.hase.soprafs21.constant.UserStatus;
 import ch.uzh.ifi.hase.soprafs21.entity.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
-@Repository("userRepository")
-public interface UserRepository extends JpaRepository<User, Long> {
+import static org.hibernate.jpa.QueryHints.HINT_CACHEABLE;
+import static org.hibernate.jpa.QueryHints.HINT_CACHE_REGION;
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
 
-    User findByUsername(String username);
+@Repository("userRepository")
+public interface UserRepository extends JpaRepository<User, Long>, UserProjectionRepository, UserStatusRepository {
 
-    User findByPassword(String password);
+    int EXPORT_FETCH_SIZE = 500;
 
-    User findByUsernameAndPassword(String username, String password);
+    // cached lookups: the id of the user comes from the query cache (invalidated by any change of the user table), the
+    // user itself from the second-level cache of the entity
+    @QueryHints({@QueryHint(name = HINT_CACHEABLE, value = "true"), @QueryHint(name = HINT_CACHE_REGION, value = User.LOOKUP_CACHE_REGION)})
+    User findByUsername(String username);
 
     Optional<User> findById(Long id);
 
+    @QueryHints({@QueryHint(name = HINT_CACHEABLE, value = "true"), @QueryHint(name = HINT_CACHE_REGION, value = User.LOOKUP_CACHE_REGION)})
     User findByToken(String token);
+
+    // the version alone, for conditional requests that do not need the user itself
+    @Query("select u.version from User u where u.id = :id")
+    Long findVersionById(@Param("id") Long id);
+
+    @Query("select u.username from User u where u.username in :usernames")
+    List<String> findExistingUsernames(@Param("usernames") Collection<String> usernames);
+
+    // keyset pagination: only the page size given by the pageable is read from the database
+    List<User> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+
+    List<User> findByStatusAndIdGreaterThanOrderByIdAsc(UserStatus status, Long id, Pageable pageable);
+
+    // bulk status update of the PresenceRegistry at startup, it bypasses the persistence context, does not change the
+    // versions and evicts the whole second-level cache of the users (the flushes use UserStatusRepository.updateStatus)
+    @Modifying
+    @Query("update User u set u.status = :status where u.status <> :status")
+    int updateAllStatuses(@Param("status") UserStatus status);
+
+    @Query("select u.id from User u where u.status = :status")
+    List<Long> findIdsByStatus(@Param("status") UserStatus status);
+
+    // all usernames through a cursor, for the UsernameFilter at startup
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "" + EXPORT_FETCH_SIZE))
+    @Query("select u.username from User u")
+    Stream<String> streamAllUsernames();
+
+    // streams all users through a cursor, must be consumed inside a transaction and closed afterwards
+    @QueryHints({@QueryHint(name = HINT_FETCH_SIZE, value = "" + EXPORT_FETCH_SIZE), @QueryHint(name = HINT_READONLY, value = "true")})
+    @Query("select u from User u order by u.id")
+    Stream<User> streamAllByOrderByIdAsc();
 }
@@ -0,0 +1,15 @@
+package ch.uzh.ifi.hase.soprafs21.repository;
+
+import ch.uzh.ifi.hase.soprafs21.constant.UserStatus;
+
+import java.util.Collection;
+
+/**
+ * Status updates of the UserRepository that keep the second-level cache of the users: only the entries of the updated
+ * users are evicted, not the whole user region and the cached lookups by username and token.
+ */
+public interface UserStatusRepository {
+
+    // bulk status update of the PresenceRegistry, must run inside a transaction, does not change the versions
+    int updateStatus(UserStatus status, Collection<Long> ids);
+}
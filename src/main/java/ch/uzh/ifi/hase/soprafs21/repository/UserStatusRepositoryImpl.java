@@ -0,0 +1,48 @@
+package ch.uzh.ifi.hase.soprafs21.repository;
+
+import ch.uzh.ifi.hase.soprafs21.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs21.entity.User;
+import org.hibernate.query.NativeQuery;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Implementation of the UserStatusRepository with a native UPDATE. A bulk JPQL update makes Hibernate evict the whole
+ * user region and invalidate every cached query on the user table, i.e. the lookups by username and token, with each
+ * flush of the PresenceRegistry. The native update is synchronized with a query space that no entity or query uses
+ * instead, so nothing is evicted by Hibernate, and the cached entries of the updated users are evicted here.
+ */
+public class UserStatusRepositoryImpl implements UserStatusRepository {
+
+    // not a table, the status is not part of any cached query
+    static final String STATUS_QUERY_SPACE = "user-status";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public int updateStatus(UserStatus status, Collection<Long> ids) {
+        int updated = entityManager.createNativeQuery("update \"USER\" set status = :status where id in (:ids)")
+                .unwrap(NativeQuery.class)
+                .addSynchronizedQuerySpace(STATUS_QUERY_SPACE)
+                // stored by ordinal, like the status column of the entity
+                .setParameter("status", status.ordinal())
+                .setParameterList("ids", ids)
+                .executeUpdate();
+
+        List<Long> evictedIds = List.copyOf(ids);
+        // after the commit, a concurrent read before it would put the old status back into the cache
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                evictedIds.forEach(id -> entityManager.getEntityManagerFactory().getCache().evict(User.class, id));
+            }
+        });
+        return updated;
+    }
+}
@@ -0,0 +1,25 @@
+package ch.uzh.ifi.hase.soprafs21.rest.dto;
+
+import java.util.List;
+
+public class UserBatchDTO {
+
+    private List<UserGetDTO> users;
+    private List<Long> missingIds;
+
+    public List<UserGetDTO> getUsers() {
+        return users;
+    }
+
+    public void setUsers(List<UserGetDTO> users) {
+        this.users = users;
+    }
+
+    public List<Long> getMissingIds() {
+        return missingIds;
+    }
+
+    public void setMissingIds(List<Long> missingIds) {
+        this.missingIds = missingIds;
+    }
+}
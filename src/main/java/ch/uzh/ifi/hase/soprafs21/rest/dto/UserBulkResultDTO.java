@@ -0,0 +1,41 @@
+package ch.uzh.ifi.hase.soprafs21.rest.dto;
+
+public class UserBulkResultDTO {
+
+    private String username;
+    private int status;
+    private String message;
+    private UserGetDTO user;
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public void setStatus(int status) {
+        this.status = status;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    public UserGetDTO getUser() {
+        return user;
+    }
+
+    public void setUser(UserGetDTO user) {
+        this.user = user;
+    }
+}
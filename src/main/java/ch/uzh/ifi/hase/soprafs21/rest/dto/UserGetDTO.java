@@ -1,12 +1,17 @@
 package ch.uzh.ifi.hase.soprafs21.rest.dto;
 
 import ch.uzh.ifi.hase.soprafs21.constant.UserStatus;
+import com.fasterxml.jackson.annotation.JsonFilter;
 import org.apache.tomcat.jni.Local;
 
 import java.time.LocalDate;
 
+// the properties can be limited with ?fields=, every ObjectMapper needs a filter with this id (see Application)
+@JsonFilter(UserGetDTO.FIELDS_FILTER)
 public class UserGetDTO {
 
+    public static final String FIELDS_FILTER = "userGetDTOFields";
+
     private Long id;
     private String password;
     private String username;
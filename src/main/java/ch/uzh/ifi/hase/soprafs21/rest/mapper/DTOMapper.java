@@ -1,11 +1,17 @@
 package ch.uzh.ifi.hase.soprafs21.rest.mapper;
 
 import ch.uzh.ifi.hase.soprafs21.entity.User;
+import ch.uzh.ifi.hase.soprafs21.rest.dto.UserBatchDTO;
 import ch.uzh.ifi.hase.soprafs21.rest.dto.UserGetDTO;
 import ch.uzh.ifi.hase.soprafs21.rest.dto.UserPostDTO;
 import org.mapstruct.*;
 import org.mapstruct.factory.Mappers;
 
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
 /**
  * DTOMapper
  * This class is responsible for generating classes that will automatically transform/map the internal representation
@@ -30,4 +36,20 @@ public interface DTOMapper {
     @Mapping(source = "status", target = "status")
     @Mapping(source = "creationDate", target = "creationDate")
     UserGetDTO convertEntityToUserGetDTO(User user);
+
+    // one convertEntityToUserGetDTO per user, in the order of the users
+    List<UserGetDTO> convertEntitiesToUserGetDTOs(List<User> users);
+
+    // the found users, and the requested ids without a user, each only once and in the order of the request
+    default UserBatchDTO convertEntitiesToUserBatchDTO(List<User> users, List<Long> requestedIds) {
+        Set<Long> missingIds = new LinkedHashSet<>(requestedIds);
+        missingIds.remove(null);
+        for (User user : users) {
+            missingIds.remove(user.getId());
+        }
+        UserBatchDTO batch = new UserBatchDTO();
+        batch.setUsers(convertEntitiesToUserGetDTOs(users));
+        batch.setMissingIds(new ArrayList<>(missingIds));
+        return batch;
+    }
 }
@@ -0,0 +1,23 @@
+package ch.uzh.ifi.hase.soprafs21.rest.mapper;
+
+import ch.uzh.ifi.hase.soprafs21.constant.UserField;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.stereotype.Component;
+
+/**
+ * UserFieldConverter
+ * This class converts the names of the ?fields= parameter (e.g. "id,username,status") to UserFields.
+ * An unknown name fails the conversion, which Spring answers with 400 BAD_REQUEST before the controller is called.
+ */
+@Component
+public class UserFieldConverter implements Converter<String, UserField> {
+
+    @Override
+    public UserField convert(String name) {
+        UserField field = UserField.forName(name);
+        if (field == null) {
+            throw new IllegalArgumentException(String.format("The field %s does not exist", name));
+        }
+        return field;
+    }
+}
@@ -0,0 +1,133 @@
+package ch.uzh.ifi.hase.soprafs21.rest.mapper;
+
+import ch.uzh.ifi.hase.soprafs21.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs21.entity.User;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * UserJsonWriter
+ * This class writes users straight to a JsonGenerator, in the same format as the UserGetDTO (same properties in the same order,
+ * dates as ISO strings), without creating a UserGetDTO per user and without Jackson reflecting over its properties.
+ * The property names, the status values and the dates are encoded only once and then reused.
+ */
+public final class UserJsonWriter {
+
+    // the dates are cached until there are this many, later dates are formatted on every write
+    static final int MAX_CACHED_DATES = 10000;
+
+    private static final SerializableString ID = new SerializedString("id");
+    private static final SerializableString PASSWORD = new SerializedString("password");
+    private static final SerializableString USERNAME = new SerializedString("username");
+    private static final SerializableString STATUS = new SerializedString("status");
+    private static final SerializableString CREATION_DATE = new SerializedString("creationDate");
+    private static final SerializableString BIRTHDATE = new SerializedString("birthdate");
+    private static final SerializableString TOKEN = new SerializedString("token");
+
+    private static final Map<UserStatus, SerializableString> STATUS_VALUES = new EnumMap<>(UserStatus.class);
+
+    private static final Map<LocalDate, SerializableString> DATE_VALUES = new ConcurrentHashMap<>();
+
+    static {
+        for (UserStatus status : UserStatus.values()) {
+            STATUS_VALUES.put(status, new SerializedString(status.name()));
+        }
+    }
+
+    private UserJsonWriter() {
+    }
+
+    /**
+     * Returns a value that Jackson serializes as the JSON array of the given users, e.g. as the body of a response.
+     */
+    public static JsonSerializable users(List<User> users) {
+        return new JsonSerializable.Base() {
+            @Override
+            public void serialize(JsonGenerator generator, SerializerProvider serializers) throws IOException {
+                writeUsers(generator, users);
+            }
+
+            @Override
+            public void serializeWithType(JsonGenerator generator, SerializerProvider serializers, TypeSerializer typeSerializer)
+                    throws IOException {
+                writeUsers(generator, users);
+            }
+        };
+    }
+
+    public static void writeUsers(JsonGenerator generator, List<User> users) throws IOException {
+        generator.writeStartArray(users, users.size());
+        for (User user : users) {
+            writeUser(generator, user);
+        }
+        generator.writeEndArray();
+    }
+
+    public static void writeUser(JsonGenerator generator, User user) throws IOException {
+        generator.writeStartObject(user);
+
+        generator.writeFieldName(ID);
+        if (user.getId() == null) {
+            generator.writeNull();
+        }
+        else {
+            generator.writeNumber(user.getId());
+        }
+        writeString(generator, PASSWORD, user.getPassword());
+        writeString(generator, USERNAME, user.getUsername());
+        generator.writeFieldName(STATUS);
+        writeValue(generator, user.getStatus() == null ? null : STATUS_VALUES.get(user.getStatus()));
+        generator.writeFieldName(CREATION_DATE);
+        writeValue(generator, toDateValue(user.getCreationDate()));
+        generator.writeFieldName(BIRTHDATE);
+        writeValue(generator, toDateValue(user.getBirthdate()));
+        writeString(generator, TOKEN, user.getToken());
+
+        generator.writeEndObject();
+    }
+
+    private static void writeString(JsonGenerator generator, SerializableString name, String value) throws IOException {
+        generator.writeFieldName(name);
+        if (value == null) {
+            generator.writeNull();
+        }
+        else {
+            generator.writeString(value);
+        }
+    }
+
+    private static void writeValue(JsonGenerator generator, SerializableString value) throws IOException {
+        if (value == null) {
+            generator.writeNull();
+        }
+        else {
+            generator.writeString(value);
+        }
+    }
+
+    // the creation dates of most users are the same few days, so nearly every date is found in the cache
+    private static SerializableString toDateValue(LocalDate date) {
+        if (date == null) {
+            return null;
+        }
+        SerializableString value = DATE_VALUES.get(date);
+        if (value == null) {
+            value = new SerializedString(date.toString());
+            if (DATE_VALUES.size() < MAX_CACHED_DATES) {
+                DATE_VALUES.putIfAbsent(date, value);
+            }
+        }
+        return value;
+    }
+}
@@ -0,0 +1,182 @@
+package ch.uzh.ifi.hase.soprafs21.service;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Password Hasher
+ * This class hashes and verifies passwords with BCrypt (salted, with a configurable cost).
+ * The hashing runs on a dedicated, bounded thread pool so that CPU heavy logins cannot use up the request threads;
+ * requests that do not fit into the queue are rejected with 503 SERVICE_UNAVAILABLE.
+ * The async variants return without waiting for the pool, for callers that must not block (the reactive profile).
+ */
+@Component
+public class PasswordHasher implements DisposableBean {
+
+    private final BCryptPasswordEncoder encoder;
+
+    // a hash of the same cost that no password matches, verified instead of the hash of a user that does not exist
+    private final String dummyHash;
+
+    private final ThreadPoolExecutor executor;
+
+    // the most threads of the pool one batch is spread over, the others stay free for logins
+    private final int batchThreads;
+
+    private final AtomicLong verifications = new AtomicLong();
+    private final AtomicLong verificationNanos = new AtomicLong();
+    private final AtomicLong rejections = new AtomicLong();
+
+    @Autowired
+    public PasswordHasher(@Value("${soprafs21.password.bcrypt-strength:10}") int strength,
+                          @Value("${soprafs21.password.hashing-threads:0}") int threads,
+                          @Value("${soprafs21.password.queue-capacity:100}") int queueCapacity) {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadNumber = new AtomicInteger();
+
+        this.batchThreads = Math.max(1, poolSize / 2);
+        this.encoder = new BCryptPasswordEncoder(strength);
+        this.dummyHash = encoder.encode(UUID.randomUUID().toString());
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "password-hashing-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    public String hash(String rawPassword) {
+        return await(hashAsync(rawPassword));
+    }
+
+    public CompletableFuture<String> hashAsync(String rawPassword) {
+        return submit(() -> encoder.encode(rawPassword));
+    }
+
+    /**
+     * Hashes all given passwords, spread over at most half of the threads of the pool so that a batch does not hold up
+     * the logins. Missing (null) passwords stay null.
+     *
+     * @return the hashes in the order of the given passwords
+     */
+    public List<String> hashAll(List<String> rawPasswords) {
+        return await(hashAllAsync(rawPasswords));
+    }
+
+    public CompletableFuture<List<String>> hashAllAsync(List<String> rawPasswords) {
+        int chunkSize = Math.max(1, (rawPasswords.size() + batchThreads - 1) / batchThreads);
+        List<CompletableFuture<List<String>>> chunks = new ArrayList<>();
+        for (int start = 0; start < rawPasswords.size(); start += chunkSize) {
+            List<String> chunk = rawPasswords.subList(start, Math.min(start + chunkSize, rawPasswords.size()));
+            chunks.add(submit(() -> {
+                List<String> hashes = new ArrayList<>(chunk.size());
+                for (String rawPassword : chunk) {
+                    hashes.add(rawPassword == null ? null : encoder.encode(rawPassword));
+                }
+                return hashes;
+            }));
+        }
+
+        return CompletableFuture.allOf(chunks.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            List<String> hashes = new ArrayList<>(rawPasswords.size());
+            for (CompletableFuture<List<String>> chunk : chunks) {
+                hashes.addAll(chunk.join());
+            }
+            return hashes;
+        });
+    }
+
+    /**
+     * Verifies the given password against the given hash. Without a hash (null, e.g. the username does not exist) the
+     * password is verified against a dummy hash and does not match, so that the time the verification takes does not
+     * tell whether a username exists.
+     */
+    public boolean matches(String rawPassword, String encodedPassword) {
+        return await(matchesAsync(rawPassword, encodedPassword));
+    }
+
+    public CompletableFuture<Boolean> matchesAsync(String rawPassword, String encodedPassword) {
+        return submit(() -> {
+            long start = System.nanoTime();
+            try {
+                boolean matches = encoder.matches(rawPassword, encodedPassword == null ? dummyHash : encodedPassword);
+                return encodedPassword != null && matches;
+            }
+            finally {
+                verificationNanos.addAndGet(System.nanoTime() - start);
+                verifications.incrementAndGet();
+            }
+        });
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> task) {
+        try {
+            return CompletableFuture.supplyAsync(task, executor);
+        }
+        catch (RejectedExecutionException e) {
+            rejections.incrementAndGet();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many concurrent logins, please try again later");
+        }
+    }
+
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Password hashing was interrupted", e);
+        }
+        catch (ExecutionException e) {
+            // the hashing tasks do not throw checked exceptions
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw (RuntimeException) e.getCause();
+        }
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    public long getVerificationCount() {
+        return verifications.get();
+    }
+
+    public long getTotalVerificationNanos() {
+        return verificationNanos.get();
+    }
+
+    public long getRejectionCount() {
+        return rejections.get();
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+}
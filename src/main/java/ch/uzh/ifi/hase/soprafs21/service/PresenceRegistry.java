@@ -0,0 +1,218 @@
+package ch.uzh.ifi.hase.soprafs21.service;
+
+import ch.uzh.ifi.hase.soprafs21.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs21.entity.User;
+import ch.uzh.ifi.hase.soprafs21.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Presence Registry
+ * This class is the source of truth for the status (ONLINE/OFFLINE) of the users. Logins and logouts only change the
+ * registry; the changes are coalesced per user and written to the database by a periodic flush, with one bulk UPDATE
+ * per status instead of one transaction per login or logout. Users without an entry have the status of the database.
+ * At startup the registry is rebuilt before any request is served (see {@link #rebuild()}).
+ */
+@Component
+@Profile("!reactive")
+// rebuilt before the web server starts, also with spring.main.lazy-initialization (fast-startup profile)
+@Lazy(false)
+public class PresenceRegistry implements SmartInitializingSingleton, DisposableBean {
+
+    // ids per UPDATE ... WHERE id IN (...)
+    static final int MAX_FLUSH_BATCH = 1000;
+
+    private final Logger log = LoggerFactory.getLogger(PresenceRegistry.class);
+
+    private final Map<Long, UserStatus> statuses = new ConcurrentHashMap<>();
+
+    // changes that are not in the database yet, only the latest status of a user is kept
+    private final Map<Long, UserStatus> pendingChanges = new ConcurrentHashMap<>();
+
+    // flushes must not overtake each other, otherwise an older status could be written last
+    private final Lock flushLock = new ReentrantLock();
+
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong flushedChanges = new AtomicLong();
+
+    private final UserRepository userRepository;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final UserChangeTracker changeTracker;
+
+    private final boolean restoreOnStartup;
+
+    @Autowired
+    public PresenceRegistry(@Qualifier("userRepository") UserRepository userRepository,
+                            PlatformTransactionManager transactionManager, UserChangeTracker changeTracker,
+                            @Value("${soprafs21.presence.rebuild:reset}") String rebuildMode) {
+        if (!"reset".equals(rebuildMode) && !"restore".equals(rebuildMode)) {
+            throw new IllegalArgumentException("The presence rebuild mode must be reset or restore, not " + rebuildMode);
+        }
+        this.userRepository = userRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        // a flush can be triggered from within a (read-only) transaction of the UserService
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.changeTracker = changeTracker;
+        this.restoreOnStartup = "restore".equals(rebuildMode);
+    }
+
+    /**
+     * Sets the status of the given user. Setting the status a user already has is neither written to the database
+     * nor does it change the ETag of the list of users.
+     */
+    public void setStatus(Long userId, UserStatus status) {
+        boolean[] changed = new boolean[1];
+        // the pending change is recorded while the entry is locked, so that concurrent logins and logouts of the
+        // same user leave the status that is set last both in the registry and pending for the database
+        statuses.compute(userId, (id, current) -> {
+            if (current != status) {
+                pendingChanges.put(id, status);
+                changed[0] = true;
+            }
+            return status;
+        });
+        if (changed[0]) {
+            changeTracker.userChanged();
+        }
+    }
+
+    /**
+     * Returns the status of the given user, or null if it has not changed since the startup (the status in the
+     * database is up to date then).
+     */
+    public UserStatus getStatus(Long userId) {
+        return statuses.get(userId);
+    }
+
+    /**
+     * Replaces the status that was read from the database with the one of the registry.
+     * The user must not be written back with this status, e.g. it has to be read in a read-only transaction.
+     */
+    public void applyTo(User user) {
+        UserStatus status = statuses.get(user.getId());
+        if (status != null) {
+            user.setStatus(status);
+        }
+    }
+
+    /**
+     * Writes the pending status changes to the database, with one UPDATE per status (and MAX_FLUSH_BATCH users).
+     * Changes that could not be written are kept for the next flush, unless the user changed the status again.
+     *
+     * @return the number of users whose status was written
+     */
+    @Scheduled(fixedDelayString = "${soprafs21.presence.flush-interval-ms:1000}")
+    public int flush() {
+        if (pendingChanges.isEmpty()) {
+            return 0;
+        }
+        flushLock.lock();
+        try {
+            Map<UserStatus, List<Long>> changes = new EnumMap<>(UserStatus.class);
+            for (Map.Entry<Long, UserStatus> change : pendingChanges.entrySet()) {
+                if (pendingChanges.remove(change.getKey(), change.getValue())) {
+                    changes.computeIfAbsent(change.getValue(), status -> new ArrayList<>()).add(change.getKey());
+                }
+            }
+            int count = 0;
+            for (List<Long> userIds : changes.values()) {
+                count += userIds.size();
+            }
+            if (count == 0) {
+                return 0;
+            }
+
+            try {
+                transactionTemplate.executeWithoutResult(transaction -> changes.forEach((status, userIds) -> {
+                    for (int from = 0; from < userIds.size(); from += MAX_FLUSH_BATCH) {
+                        userRepository.updateStatus(status, userIds.subList(from, Math.min(from + MAX_FLUSH_BATCH, userIds.size())));
+                    }
+                }));
+            }
+            catch (RuntimeException e) {
+                changes.forEach((status, userIds) -> userIds.forEach(userId -> statuses.computeIfPresent(userId, (id, current) -> {
+                    // unless the status changed since, then its own pending change is written
+                    if (current == status) {
+                        pendingChanges.putIfAbsent(id, status);
+                    }
+                    return current;
+                })));
+                log.warn("Could not write {} status changes, they are retried with the next flush", count, e);
+                return 0;
+            }
+
+            flushes.incrementAndGet();
+            flushedChanges.addAndGet(count);
+            log.debug("Wrote {} status changes", count);
+            return count;
+        }
+        finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Rebuilds the registry from the database. Changes that were not flushed before a crash are lost, so by default
+     * (soprafs21.presence.rebuild=reset) every user is set OFFLINE, which is a consistent state no matter when the
+     * application stopped. With soprafs21.presence.rebuild=restore the users that were ONLINE at the last flush
+     * stay ONLINE, e.g. after a graceful restart (the pending changes are flushed on shutdown).
+     */
+    public void rebuild() {
+        statuses.clear();
+        pendingChanges.clear();
+        if (restoreOnStartup) {
+            List<Long> onlineUserIds = userRepository.findIdsByStatus(UserStatus.ONLINE);
+            onlineUserIds.forEach(userId -> statuses.put(userId, UserStatus.ONLINE));
+            log.info("Restored {} online users", onlineUserIds.size());
+            return;
+        }
+        Integer resetUsers = transactionTemplate.execute(transaction -> userRepository.updateAllStatuses(UserStatus.OFFLINE));
+        log.info("Set {} users offline", resetUsers);
+    }
+
+    // before the web server starts, so that no request sees the registry before it is rebuilt
+    @Override
+    public void afterSingletonsInstantiated() {
+        rebuild();
+    }
+
+    @Override
+    public void destroy() {
+        flush();
+    }
+
+    public int getPendingCount() {
+        return pendingChanges.size();
+    }
+
+    public long getFlushCount() {
+        return flushes.get();
+    }
+
+    public long getFlushedChangeCount() {
+        return flushedChanges.get();
+    }
+}
@@ -0,0 +1,272 @@
+package ch.uzh.ifi.hase.soprafs21.service;
+
+import ch.uzh.ifi.hase.soprafs21.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs21.entity.User;
+import ch.uzh.ifi.hase.soprafs21.exceptions.UserError;
+import ch.uzh.ifi.hase.soprafs21.repository.ReactiveUserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.ReactiveTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Reactive User Service
+ * This class is the non-blocking counterpart of the UserService for the reactive profile. It offers the same
+ * functionality with the same errors, but returns publishers: the database is accessed through the
+ * ReactiveUserRepository and the passwords are hashed on the PasswordHasher pool without waiting for it.
+ */
+@Service
+@Profile("reactive")
+@Transactional
+public class ReactiveUserService {
+
+    private final Logger log = LoggerFactory.getLogger(ReactiveUserService.class);
+
+    private final ReactiveUserRepository userRepository;
+
+    private final TokenCache tokenCache;
+
+    private final PasswordHasher passwordHasher;
+
+    private final TransactionalOperator transactionalOperator;
+
+    @Autowired
+    public ReactiveUserService(@Qualifier("reactiveUserRepository") ReactiveUserRepository userRepository,
+                               TokenCache tokenCache, PasswordHasher passwordHasher,
+                               ReactiveTransactionManager transactionManager) {
+        this.userRepository = userRepository;
+        this.tokenCache = tokenCache;
+        this.passwordHasher = passwordHasher;
+        this.transactionalOperator = TransactionalOperator.create(transactionManager);
+    }
+
+    /**
+     * Returns one page of users ordered by id, starting after the given id (keyset pagination).
+     *
+     * @see UserService#getUsers(Long, Integer, UserStatus)
+     */
+    @Transactional(readOnly = true)
+    public Flux<User> getUsers(Long after, Integer limit, UserStatus status) {
+        int pageSize;
+        try {
+            pageSize = UserService.getPageSize(limit);
+        }
+        catch (ResponseStatusException e) {
+            return Flux.error(e);
+        }
+        long afterId = after == null ? 0L : after;
+
+        if (status == null) {
+            return this.userRepository.findByIdGreaterThanOrderByIdAsc(afterId, pageSize);
+        }
+        return this.userRepository.findByStatusAndIdGreaterThanOrderByIdAsc(status, afterId, pageSize);
+    }
+
+    /**
+     * Emits all users in ascending id order. The rows are only read as fast as the subscriber consumes them.
+     */
+    @Transactional(readOnly = true)
+    public Flux<User> exportUsers() {
+        return this.userRepository.streamAllByOrderByIdAsc();
+    }
+
+    public Mono<User> createUser(User newUser) {
+        newUser.setToken(UUID.randomUUID().toString());
+        newUser.setStatus(UserStatus.OFFLINE);
+        newUser.setCreationDate(LocalDate.now());
+
+        return checkIfUserExists(newUser)
+                .then(hashPassword(newUser))
+                .flatMap(userRepository::save)
+                .onErrorMap(DataIntegrityViolationException.class, ReactiveUserService::toUsernameConflict)
+                .doOnNext(createdUser -> log.debug("Created Information for User: {}", createdUser));
+    }
+
+    /**
+     * Creates all given users in one transaction, checking the uniqueness of the usernames with a single query.
+     * The passwords are hashed before the transaction is opened.
+     *
+     * @see UserService#createUsers(List)
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public Mono<List<User>> createUsers(List<User> newUsers) {
+        if (newUsers.isEmpty() || newUsers.size() > UserService.MAX_BULK_SIZE) {
+            return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    String.format("Between 1 and %d users can be created at once", UserService.MAX_BULK_SIZE)));
+        }
+
+        Set<String> usernames = newUsers.stream().filter(UserService::isComplete).map(User::getUsername)
+                .collect(Collectors.toSet());
+        return this.userRepository.findExistingUsernames(usernames)
+                .collect(Collectors.toCollection(HashSet::new))
+                .flatMap(takenUsernames -> {
+                    List<User> results = new ArrayList<>(newUsers.size());
+                    List<User> usersToSave = new ArrayList<>();
+                    for (User newUser : newUsers) {
+                        if (!UserService.isComplete(newUser) || !takenUsernames.add(newUser.getUsername())) {
+                            results.add(null);
+                            continue;
+                        }
+                        newUser.setToken(UUID.randomUUID().toString());
+                        newUser.setStatus(UserStatus.OFFLINE);
+                        newUser.setCreationDate(LocalDate.now());
+                        usersToSave.add(newUser);
+                        results.add(newUser);
+                    }
+
+                    List<String> passwords = usersToSave.stream().map(User::getPassword).collect(Collectors.toList());
+                    return Mono.fromFuture(() -> passwordHasher.hashAllAsync(passwords))
+                            .flatMapMany(passwordHashes -> {
+                                for (int i = 0; i < usersToSave.size(); i++) {
+                                    usersToSave.get(i).setPassword(passwordHashes.get(i));
+                                }
+                                return transactionalOperator.transactional(this.userRepository.saveAll(usersToSave));
+                            })
+                            .onErrorMap(DataIntegrityViolationException.class, ReactiveUserService::toUsernameConflict)
+                            .then(Mono.fromSupplier(() -> {
+                                log.debug("Created {} of {} users in bulk", usersToSave.size(), newUsers.size());
+                                return results;
+                            }));
+                });
+    }
+
+    private Mono<Void> checkIfUserExists(User userToBeCreated) {
+        return userRepository.findByUsername(userToBeCreated.getUsername())
+                .flatMap(userByUsername -> Mono.error(UserError.USERNAME_TAKEN::newException));
+    }
+
+    /**
+     * Translates the violation of the unique constraint of the username into the same 409 CONFLICT as
+     * checkIfUserExists, e.g. when two users with the same username are created at the same time or a user is renamed
+     * to a taken username, like the UserService does. Other violations (e.g. a missing password) are emitted as they are.
+     */
+    private static Throwable toUsernameConflict(DataIntegrityViolationException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause.getMessage() != null && cause.getMessage().toUpperCase().contains(User.USERNAME_CONSTRAINT)) {
+                return UserError.USERNAME_TAKEN.newException();
+            }
+        }
+        return e;
+    }
+
+    // only the salted hash is stored, a missing password is rejected by the database constraint
+    private Mono<User> hashPassword(User user) {
+        if (user.getPassword() == null) {
+            return Mono.just(user);
+        }
+        return Mono.fromFuture(() -> passwordHasher.hashAsync(user.getPassword()))
+                .map(passwordHash -> {
+                    user.setPassword(passwordHash);
+                    return user;
+                });
+    }
+
+    public Mono<User> checkIfCredentialsExist(User userInput) {
+        Mono<User> wrongCredentials = Mono.error(UserError.CREDENTIALS_INVALID::newException);
+        if (userInput.getPassword() == null) {
+            return wrongCredentials;
+        }
+
+        return userRepository.findByUsername(userInput.getUsername())
+                .filterWhen(userExists -> Mono.fromFuture(() ->
+                        passwordHasher.matchesAsync(userInput.getPassword(), userExists.getPassword())))
+                .switchIfEmpty(wrongCredentials)
+                .flatMap(userExists -> {
+                    userExists.setStatus(UserStatus.ONLINE);
+                    return userRepository.save(userExists);
+                });
+    }
+
+    @Transactional(readOnly = true)
+    public Mono<User> getUserWithId(Long id) {
+        return this.userRepository.findById(id)
+                .switchIfEmpty(Mono.error(UserError.USER_NOT_FOUND::newException));
+    }
+
+    /**
+     * Returns the users with the given ids in the order of the ids, each only once. Ids without a user are left out.
+     *
+     * @see UserService#getUsersWithIds(Collection)
+     */
+    @Transactional(readOnly = true)
+    public Mono<List<User>> getUsersWithIds(Collection<Long> ids) {
+        Set<Long> distinctIds = new LinkedHashSet<>(ids);
+        distinctIds.remove(null);
+        if (distinctIds.isEmpty() || distinctIds.size() > UserService.MAX_BATCH_SIZE) {
+            return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    String.format("Between 1 and %d users can be read at once", UserService.MAX_BATCH_SIZE)));
+        }
+
+        // one IN query, bounded by MAX_BATCH_SIZE like the one of the UserService
+        return this.userRepository.findAllById(distinctIds)
+                .collectMap(User::getId)
+                .map(usersById -> {
+                    List<User> users = new ArrayList<>(usersById.size());
+                    for (Long id : distinctIds) {
+                        User user = usersById.get(id);
+                        if (user != null) {
+                            users.add(user);
+                        }
+                    }
+                    return users;
+                });
+    }
+
+    public Mono<User> logOut(Long id) {
+        return this.userRepository.findById(id)
+                .switchIfEmpty(Mono.error(UserError.USER_NOT_FOUND::newException))
+                .flatMap(user -> {
+                    user.setStatus(UserStatus.OFFLINE);
+                    tokenCache.invalidate(user.getToken());
+                    return userRepository.save(user);
+                });
+    }
+
+    @Transactional(readOnly = true)
+    public Mono<Boolean> authenticateToken(String token) {
+        // tokens that were recently authenticated do not need another database lookup
+        if (tokenCache.getUserId(token) != null) {
+            return Mono.just(true);
+        }
+        return this.userRepository.findByToken(token)
+                .switchIfEmpty(Mono.error(UserError.TOKEN_INVALID::newException))
+                .map(userToken -> {
+                    tokenCache.put(token, userToken.getId());
+                    return true;
+                });
+    }
+
+    public Mono<User> modifyUser(Long id, User userInput) {
+        return this.userRepository.findById(id)
+                .switchIfEmpty(Mono.error(UserError.USER_NOT_FOUND::newException))
+                .flatMap(userToBeModified -> {
+                    if (!userInput.getUsername().trim().equals("")) {
+                        userToBeModified.setUsername(userInput.getUsername());
+                    }
+                    userToBeModified.setBirthdate(userInput.getBirthdate());
+                    return userRepository.save(userToBeModified);
+                })
+                .onErrorMap(DataIntegrityViolationException.class, ReactiveUserService::toUsernameConflict);
+    }
+}
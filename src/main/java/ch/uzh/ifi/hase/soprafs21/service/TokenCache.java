@@ -0,0 +1,137 @@
+package ch.uzh.ifi.hase.soprafs21.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Token Cache
+ * This class keeps a bounded, in-process mapping from authentication tokens to user ids so that
+ * UserService does not have to run UserRepository.findByToken for every authenticated request.
+ * Entries expire after a fixed time to live; once the cache is full the oldest entries are evicted first.
+ */
+@Component
+public class TokenCache {
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    // insertion order of the entries, used for size based eviction (may contain stale entries)
+    private final Queue<Entry> insertionOrder = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queuedEntries = new AtomicInteger();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final LongSupplier clock;
+
+    @Autowired
+    public TokenCache(@Value("${soprafs21.token-cache.max-size:10000}") int maxSize,
+                      @Value("${soprafs21.token-cache.ttl-seconds:300}") long ttlSeconds) {
+        this(maxSize, TimeUnit.SECONDS.toNanos(ttlSeconds), System::nanoTime);
+    }
+
+    TokenCache(int maxSize, long ttlNanos, LongSupplier clock) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("The token cache needs a positive maximum size");
+        }
+        this.maxSize = maxSize;
+        this.ttlNanos = ttlNanos;
+        this.clock = clock;
+    }
+
+    /**
+     * Returns the id of the user owning the given token, or null if the token is not cached or has expired.
+     */
+    public Long getUserId(String token) {
+        Entry entry = entries.get(token);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        if (entry.expiresAt - clock.getAsLong() <= 0) {
+            if (entries.remove(token, entry)) {
+                evictions.incrementAndGet();
+            }
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.userId;
+    }
+
+    public void put(String token, Long userId) {
+        Entry entry = new Entry(token, userId, clock.getAsLong() + ttlNanos);
+        entries.put(token, entry);
+        insertionOrder.add(entry);
+        if (queuedEntries.incrementAndGet() > maxSize) {
+            evictOldest();
+        }
+    }
+
+    /**
+     * Removes the given token, e.g. because the user logged out or a new token has been issued.
+     */
+    public void invalidate(String token) {
+        if (token != null) {
+            entries.remove(token);
+        }
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    private void evictOldest() {
+        while (queuedEntries.get() > maxSize) {
+            Entry oldest = insertionOrder.poll();
+            if (oldest == null) {
+                return;
+            }
+            queuedEntries.decrementAndGet();
+            // only count entries that were still live, invalidated ones are just dropped from the queue
+            if (entries.remove(oldest.token, oldest)) {
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    private static final class Entry {
+        private final String token;
+        private final Long userId;
+        private final long expiresAt;
+
+        private Entry(String token, Long userId, long expiresAt) {
+            this.token = token;
+            this.userId = userId;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
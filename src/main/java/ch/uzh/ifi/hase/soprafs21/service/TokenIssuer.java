@@ -0,0 +1,318 @@
+package ch.uzh.ifi.hase.soprafs21.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Token Issuer
+ * This class issues the authentication tokens of the users. In the random mode a token is an opaque random UUID that
+ * is stored with the user and looked up on every request (see TokenCache). In the signed mode a token carries the id
+ * of the user, its issue and expiry time and an HMAC-SHA256 signature, so that it is verified without the database:
+ * {@code <key id>.<base64url payload>.<base64url signature>}.
+ * Tokens are signed with the active key and verified with the key named in the token, so keys can be rotated. Logging
+ * out revokes every token of the user issued until then; the denylist keeps one time per user, until those tokens
+ * have expired anyway. The denylist is kept in memory, each instance only knows the logouts it has handled itself.
+ * The random numbers come from a few DRBG SecureRandoms, which only read from the operating system to seed themselves
+ * (the default NativePRNG reads /dev/urandom under a lock shared by all its instances). A DRBG is synchronized, so the
+ * threads are spread over one stripe per processor. The Mac instances are cloned from an initialized one and kept in a
+ * pool rather than per thread, since with virtual threads every request is a new thread.
+ */
+@Component
+public class TokenIssuer {
+
+    static final String RANDOM = "random";
+    static final String SIGNED = "signed";
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    // user id, issued at, expires at (epoch millis) and a random nonce that keeps the tokens of a millisecond apart
+    private static final int PAYLOAD_BYTES = 4 * Long.BYTES;
+
+    private static final int MIN_KEY_BYTES = 32;
+
+    private static final Base64.Encoder BASE64 = Base64.getUrlEncoder().withoutPadding();
+
+    // a stripe per processor, a thread holds the lock of its DRBG only while it generates the bytes of one token
+    private static final SecureRandom[] RANDOM_NUMBERS = newRandomNumbers(Runtime.getRuntime().availableProcessors());
+
+    private final Logger log = LoggerFactory.getLogger(TokenIssuer.class);
+
+    private final boolean signed;
+
+    private final Map<String, SigningKey> keys;
+
+    private final SigningKey activeKey;
+
+    private final long ttlMillis;
+
+    private final LongSupplier clock;
+
+    // user id -> time until which all tokens of the user are revoked
+    private final Map<Long, Long> revocations = new ConcurrentHashMap<>();
+
+    private final AtomicLong verifications = new AtomicLong();
+    private final AtomicLong rejections = new AtomicLong();
+
+    @Autowired
+    public TokenIssuer(@Value("${soprafs21.token.mode:random}") String mode,
+                       @Value("${soprafs21.token.keys:}") List<String> keys,
+                       @Value("${soprafs21.token.active-key:}") String activeKey,
+                       @Value("${soprafs21.token.ttl-seconds:86400}") long ttlSeconds) {
+        this(mode, keys, activeKey, TimeUnit.SECONDS.toMillis(ttlSeconds), System::currentTimeMillis);
+    }
+
+    TokenIssuer(String mode, List<String> keys, String activeKey, long ttlMillis, LongSupplier clock) {
+        if (!RANDOM.equals(mode) && !SIGNED.equals(mode)) {
+            throw new IllegalArgumentException("The token mode must be random or signed, not " + mode);
+        }
+        if (ttlMillis <= 0) {
+            throw new IllegalArgumentException("Tokens need a positive time to live");
+        }
+        this.signed = SIGNED.equals(mode);
+        this.ttlMillis = ttlMillis;
+        this.clock = clock;
+        this.keys = new HashMap<>();
+        for (String key : keys) {
+            if (!key.isBlank()) {
+                SigningKey signingKey = SigningKey.parse(key.trim());
+                this.keys.put(signingKey.id, signingKey);
+            }
+        }
+        if (signed && this.keys.isEmpty()) {
+            byte[] secret = new byte[MIN_KEY_BYTES];
+            randomNumbers().nextBytes(secret);
+            SigningKey generated = new SigningKey("generated", secret);
+            this.keys.put(generated.id, generated);
+            log.warn("No token keys configured, the signed tokens are only valid until this instance stops");
+        }
+        this.activeKey = activeKey.isEmpty() && this.keys.size() == 1 ? this.keys.values().iterator().next() : this.keys.get(activeKey);
+        if (signed && this.activeKey == null) {
+            throw new IllegalArgumentException("The active token key " + activeKey + " is not one of the token keys");
+        }
+    }
+
+    private static SecureRandom[] newRandomNumbers(int stripes) {
+        SecureRandom[] randomNumbers = new SecureRandom[stripes];
+        try {
+            for (int i = 0; i < stripes; i++) {
+                // each one seeded on its own, the stripes do not share a state
+                randomNumbers[i] = SecureRandom.getInstance("DRBG");
+            }
+        }
+        catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+        return randomNumbers;
+    }
+
+    // a random stripe rather than one per thread, virtual threads are too many and too short-lived to own one
+    private static SecureRandom randomNumbers() {
+        return RANDOM_NUMBERS[ThreadLocalRandom.current().nextInt(RANDOM_NUMBERS.length)];
+    }
+
+    public boolean isSigned() {
+        return signed;
+    }
+
+    /**
+     * Returns a new random token (a random UUID), which is what the users are stored with in both modes.
+     */
+    public String randomToken() {
+        byte[] bytes = new byte[16];
+        randomNumbers().nextBytes(bytes);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        // version 4, IETF variant, like UUID.randomUUID() but from the DRBG instead of the default SecureRandom
+        long mostSignificant = (buffer.getLong() & ~0xf000L) | 0x4000L;
+        long leastSignificant = (buffer.getLong() & 0x3fffffffffffffffL) | 0x8000000000000000L;
+        return new UUID(mostSignificant, leastSignificant).toString();
+    }
+
+    /**
+     * Returns a new signed token of the given user, valid for the time to live. Only in the signed mode.
+     */
+    public String issue(Long userId) {
+        if (!signed) {
+            throw new IllegalStateException("Signed tokens are only issued in the signed token mode");
+        }
+        long now = clock.getAsLong();
+        // a token issued right after a logout must not be revoked with the tokens from before
+        Long revokedUntil = revocations.get(userId);
+        long issuedAt = revokedUntil == null ? now : Math.max(now, revokedUntil + 1);
+        ByteBuffer payload = ByteBuffer.allocate(PAYLOAD_BYTES)
+                .putLong(userId)
+                .putLong(issuedAt)
+                .putLong(issuedAt + ttlMillis)
+                .putLong(ThreadLocalRandom.current().nextLong());
+        String signedPart = activeKey.id + "." + BASE64.encodeToString(payload.array());
+        return signedPart + "." + BASE64.encodeToString(activeKey.sign(signedPart));
+    }
+
+    /**
+     * Verifies a signed token without looking it up.
+     *
+     * @return the id of the user of the token, or null if the token is malformed, signed with an unknown key, has a
+     * wrong signature, has expired or has been revoked
+     */
+    public Long verify(String token) {
+        verifications.incrementAndGet();
+        Long userId = token == null ? null : verifySignedToken(token);
+        if (userId == null) {
+            rejections.incrementAndGet();
+        }
+        return userId;
+    }
+
+    private Long verifySignedToken(String token) {
+        int keyEnd = token.indexOf('.');
+        int payloadEnd = token.lastIndexOf('.');
+        if (keyEnd <= 0 || payloadEnd <= keyEnd) {
+            return null;
+        }
+        SigningKey key = keys.get(token.substring(0, keyEnd));
+        if (key == null) {
+            return null;
+        }
+        byte[] payloadBytes;
+        byte[] signature;
+        try {
+            payloadBytes = Base64.getUrlDecoder().decode(token.substring(keyEnd + 1, payloadEnd));
+            signature = Base64.getUrlDecoder().decode(token.substring(payloadEnd + 1));
+        }
+        catch (IllegalArgumentException e) {
+            return null;
+        }
+        // constant time, the comparison must not tell how much of a forged signature is right
+        if (payloadBytes.length != PAYLOAD_BYTES
+                || !MessageDigest.isEqual(signature, key.sign(token.substring(0, payloadEnd)))) {
+            return null;
+        }
+        ByteBuffer payload = ByteBuffer.wrap(payloadBytes);
+        long userId = payload.getLong();
+        long issuedAt = payload.getLong();
+        long expiresAt = payload.getLong();
+        if (expiresAt - clock.getAsLong() <= 0) {
+            return null;
+        }
+        Long revokedUntil = revocations.get(userId);
+        if (revokedUntil != null && issuedAt <= revokedUntil) {
+            return null;
+        }
+        return userId;
+    }
+
+    /**
+     * Revokes every signed token of the given user issued until now, e.g. because the user logged out.
+     */
+    public void revoke(Long userId) {
+        revocations.merge(userId, clock.getAsLong(), Math::max);
+    }
+
+    /**
+     * Removes the revocations whose tokens have all expired.
+     *
+     * @return the number of removed revocations
+     */
+    @Scheduled(fixedDelayString = "${soprafs21.token.revocation-cleanup-ms:60000}")
+    public int evictExpiredRevocations() {
+        long now = clock.getAsLong();
+        int evicted = 0;
+        for (Map.Entry<Long, Long> revocation : revocations.entrySet()) {
+            if (now - revocation.getValue() >= ttlMillis && revocations.remove(revocation.getKey(), revocation.getValue())) {
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    public int getRevocationCount() {
+        return revocations.size();
+    }
+
+    public long getVerificationCount() {
+        return verifications.get();
+    }
+
+    public long getRejectionCount() {
+        return rejections.get();
+    }
+
+    private static final class SigningKey {
+        private final String id;
+        private final Mac prototype;
+
+        // initialized Macs that are not in use, never more than the threads that have signed at the same time
+        private final Queue<Mac> macs = new ConcurrentLinkedQueue<>();
+
+        private SigningKey(String id, byte[] secret) {
+            if (id.isEmpty() || id.contains(".")) {
+                throw new IllegalArgumentException("The id of a token key must not be empty or contain a dot");
+            }
+            if (secret.length < MIN_KEY_BYTES) {
+                throw new IllegalArgumentException("The token key " + id + " must have at least " + MIN_KEY_BYTES + " bytes");
+            }
+            this.id = id;
+            try {
+                this.prototype = Mac.getInstance(ALGORITHM);
+                this.prototype.init(new SecretKeySpec(secret, ALGORITHM));
+            }
+            catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        // <key id>:<base64 secret>
+        private static SigningKey parse(String key) {
+            int separator = key.indexOf(':');
+            if (separator < 0) {
+                // without the key itself, it is a secret
+                throw new IllegalArgumentException("A token key is not of the form <id>:<base64 secret>");
+            }
+            return new SigningKey(key.substring(0, separator), Base64.getDecoder().decode(key.substring(separator + 1)));
+        }
+
+        private byte[] sign(String signedPart) {
+            Mac mac = macs.poll();
+            if (mac == null) {
+                mac = newMac();
+            }
+            // doFinal resets the Mac for the next token
+            byte[] signature = mac.doFinal(signedPart.getBytes(StandardCharsets.US_ASCII));
+            macs.offer(mac);
+            return signature;
+        }
+
+        // a clone of the prototype is initialized with the key already, without looking up the provider again
+        private Mac newMac() {
+            try {
+                return (Mac) prototype.clone();
+            }
+            catch (CloneNotSupportedException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
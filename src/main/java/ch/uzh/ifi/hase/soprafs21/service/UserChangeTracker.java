@@ -0,0 +1,65 @@
+package ch.uzh.ifi.hase.soprafs21.service;
+
+import ch.uzh.ifi.hase.soprafs21.constant.UserStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * User Change Tracker
+ * This class derives the ETags of the user resources. A single user is tagged with its @Version and its status in the
+ * PresenceRegistry, the list of users with a generation that is incremented after every committed transaction that
+ * changed a user and after every status change.
+ * The tags also contain the start time of the application: the in-memory database starts empty again after a restart,
+ * so a version or generation seen before the restart may belong to different data.
+ */
+@Component
+public class UserChangeTracker {
+
+    private final AtomicLong generation = new AtomicLong();
+
+    private final String epoch = Long.toString(System.currentTimeMillis(), Character.MAX_RADIX);
+
+    /**
+     * Called for every inserted, updated or deleted user. Inside a transaction the generation is only incremented
+     * after the commit, so that no reader can tag the old data with the new generation.
+     */
+    public void userChanged() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            generation.incrementAndGet();
+            return;
+        }
+        // once per transaction, a bulk insert should not register a synchronization per user
+        if (TransactionSynchronizationManager.hasResource(this)) {
+            return;
+        }
+        TransactionSynchronizationManager.bindResource(this, Boolean.TRUE);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                generation.incrementAndGet();
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(UserChangeTracker.this);
+            }
+        });
+    }
+
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    public String getUsersETag() {
+        return "\"" + epoch + "-" + generation.get() + "\"";
+    }
+
+    // the status is null as long as the one in the database is up to date, see PresenceRegistry.getStatus
+    public String getUserETag(Long id, Long version, UserStatus status) {
+        String eTag = epoch + "-" + id + "-" + version;
+        return "\"" + (status == null ? eTag : eTag + "-" + status) + "\"";
+    }
+}
@@ -1,59 +1,329 @@
 package ch.uzh.ifi.hase.soprafs21.service;
 import java.time.LocalDate;
 
+import ch.uzh.ifi.hase.soprafs21.constant.UserField;
 import ch.uzh.ifi.hase.soprafs21.constant.UserStatus;
 import ch.uzh.ifi.hase.soprafs21.entity.User;
+import ch.uzh.ifi.hase.soprafs21.exceptions.UserError;
+import ch.uzh.ifi.hase.soprafs21.logging.RequestLog;
 import ch.uzh.ifi.hase.soprafs21.repository.UserRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.server.ResponseStatusException;
 
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.UUID;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * User Service
  * This class is the "worker" and responsible for all functionality related to the user
  * (e.g., it creates, modifies, deletes, finds). The result will be passed back to the caller.
+ * Methods that only read are read-only transactions: Hibernate neither checks the loaded users for changes nor
+ * flushes them, and the queries run on the replica pool (see ReadWriteRoutingDataSource).
  */
 @Service
+@Profile("!reactive")
 @Transactional
 public class UserService {
 
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    public static final int MAX_PAGE_SIZE = 500;
+    public static final int MAX_BULK_SIZE = 1000;
+    // also the longest IN list of getUsersWithIds, which reads a whole batch with one query
+    public static final int MAX_BATCH_SIZE = 500;
+
     private final Logger log = LoggerFactory.getLogger(UserService.class);
 
     private final UserRepository userRepository;
 
+    private final TokenCache tokenCache;
+
+    private final PasswordHasher passwordHasher;
+
+    private final UserChangeTracker changeTracker;
+
+    private final PresenceRegistry presenceRegistry;
+
+    private final UsernameFilter usernameFilter;
+
+    private final TokenIssuer tokenIssuer;
+
+    private final RequestLog requestLog;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final TransactionTemplate readOnlyTransactionTemplate;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
     @Autowired // dependancy injection
-    public UserService(@Qualifier("userRepository") UserRepository userRepository) {
+    public UserService(@Qualifier("userRepository") UserRepository userRepository, TokenCache tokenCache,
+                       PasswordHasher passwordHasher, UserChangeTracker changeTracker, PresenceRegistry presenceRegistry,
+                       UsernameFilter usernameFilter, TokenIssuer tokenIssuer, RequestLog requestLog,
+                       PlatformTransactionManager transactionManager) {
         this.userRepository = userRepository;
+        this.tokenCache = tokenCache;
+        this.passwordHasher = passwordHasher;
+        this.changeTracker = changeTracker;
+        this.presenceRegistry = presenceRegistry;
+        this.usernameFilter = usernameFilter;
+        this.tokenIssuer = tokenIssuer;
+        this.requestLog = requestLog;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate.setReadOnly(true);
+    }
+
+    /**
+     * Returns one page of users ordered by id, starting after the given id (keyset pagination).
+     * The page size is capped at MAX_PAGE_SIZE so that a single request can never read the whole table.
+     * The status of the users is the one of the PresenceRegistry; before filtering by status the pending status
+     * changes are written to the database, and the filtered query runs on the primary, which has them already (the
+     * replica may not yet). Unfiltered pages are read in a read-only transaction on the replica.
+     *
+     * @param after  id of the last user of the previous page, null for the first page
+     * @param limit  requested page size, null for the default page size
+     * @param status optional status filter, null for all users
+     * @return the users of the requested page
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public List<User> getUsers(Long after, Integer limit, UserStatus status) {
+        Pageable page = PageRequest.of(0, getPageSize(limit));
+        long afterId = after == null ? 0L : after;
+
+        List<User> users;
+        if (status == null) {
+            users = readOnlyTransactionTemplate.execute(transaction ->
+                    this.userRepository.findByIdGreaterThanOrderByIdAsc(afterId, page));
+        }
+        else {
+            presenceRegistry.flush();
+            users = transactionTemplate.execute(transaction ->
+                    this.userRepository.findByStatusAndIdGreaterThanOrderByIdAsc(status, afterId, page));
+        }
+        // after the transaction, the status of the registry must not be written back with the users
+        users.forEach(presenceRegistry::applyTo);
+        return users;
+    }
+
+    /**
+     * Like getUsers(after, limit, status), but only the given fields (and the id) are read from the database.
+     * The users are not managed entities, the fields that were not requested are null.
+     *
+     * @param fields the requested fields, at least one
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public List<User> getUsers(Long after, Integer limit, UserStatus status, Set<UserField> fields) {
+        int pageSize = getPageSize(limit);
+        long afterId = after == null ? 0L : after;
+
+        if (status != null) {
+            presenceRegistry.flush();
+        }
+        // on the primary with a status filter, like getUsers(after, limit, status)
+        List<User> users = (status == null ? readOnlyTransactionTemplate : transactionTemplate).execute(transaction ->
+                this.userRepository.findProjectedByIdGreaterThan(fields, status, afterId, pageSize));
+        if (fields.contains(UserField.STATUS)) {
+            users.forEach(presenceRegistry::applyTo);
+        }
+        return users;
+    }
+
+    /**
+     * Returns the size of the page getUsers reads for the requested limit, the default page size for null and at most
+     * MAX_PAGE_SIZE. A page of exactly this size may be followed by more users.
+     *
+     * @throws ResponseStatusException 400 if the limit is not positive
+     */
+    public static int getPageSize(Integer limit) {
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : limit;
+        if (pageSize <= 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The page size must be positive");
+        }
+        return Math.min(pageSize, MAX_PAGE_SIZE);
     }
 
-    public List<User> getUsers() {
-        return this.userRepository.findAll();
+    /**
+     * Passes every user to the given consumer, reading them through a database cursor with a fixed fetch size.
+     * Each user is detached after it has been consumed so that the persistence context does not grow with the table.
+     *
+     * @param consumer called once per user, in ascending id order
+     */
+    @Transactional(readOnly = true)
+    public void exportUsers(Consumer<User> consumer) {
+        try (Stream<User> users = this.userRepository.streamAllByOrderByIdAsc()) {
+            users.forEach(user -> {
+                presenceRegistry.applyTo(user);
+                consumer.accept(user);
+                entityManager.detach(user);
+            });
+        }
+    }
+
+    /**
+     * Like exportUsers(consumer), but only the given fields (and the id) are read from the database.
+     *
+     * @param fields the requested fields, at least one
+     */
+    @Transactional(readOnly = true)
+    public void exportUsers(Set<UserField> fields, Consumer<User> consumer) {
+        try (Stream<User> users = this.userRepository.streamProjected(fields)) {
+            users.forEach(user -> {
+                if (fields.contains(UserField.STATUS)) {
+                    presenceRegistry.applyTo(user);
+                }
+                consumer.accept(user);
+            });
+        }
     }
 
     public User createUser(User newUser) {
-        newUser.setToken(UUID.randomUUID().toString());
+        newUser.setToken(tokenIssuer.randomToken());
         newUser.setStatus(UserStatus.OFFLINE);
         newUser.setCreationDate(LocalDate.now());
-        System.out.println("Token is: " + newUser.getToken());
-        checkIfUserExists(newUser);
+        // a username the filter does not contain is new, the unique constraint still catches a concurrent signup
+        if (usernameFilter.mightContain(newUser.getUsername())) {
+            checkIfUserExists(newUser);
+        }
+
+        // only the salted hash is stored, a missing password is rejected by the database constraint
+        if (newUser.getPassword() != null) {
+            newUser.setPassword(passwordHasher.hash(newUser.getPassword()));
+        }
 
         // saves the given entity but data is only persisted in the database once flush() is called
-        newUser = userRepository.save(newUser);
-        userRepository.flush();
+        try {
+            newUser = userRepository.save(newUser);
+            userRepository.flush();
+        }
+        catch (DataIntegrityViolationException e) {
+            throw toUsernameConflict(e);
+        }
+        usernameFilter.add(newUser.getUsername());
+        issueSignedToken(newUser);
+        requestLog.log("user.created", "userId", newUser.getId(), "username", newUser.getUsername());
 
         log.debug("Created Information for User: {}", newUser);
         return newUser;
     }
 
+    /**
+     * Creates all given users in one transaction. The uniqueness of the usernames is checked with a single query
+     * for the whole batch, and the new users are inserted in JDBC batches. The passwords are hashed before the
+     * transaction is opened, so that it does not hold a connection while the batch waits for the PasswordHasher.
+     * Users that are not complete (see isComplete) or whose username already exists (in the database or earlier in the
+     * same batch) are not created.
+     *
+     * @param newUsers users to be created, at most MAX_BULK_SIZE
+     * @return the created users in the order of the input, with null for every user that could not be created
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public List<User> createUsers(List<User> newUsers) {
+        if (newUsers.isEmpty() || newUsers.size() > MAX_BULK_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    String.format("Between 1 and %d users can be created at once", MAX_BULK_SIZE));
+        }
+
+        // only the usernames the filter might contain are looked up
+        Set<String> usernames = new HashSet<>();
+        for (User newUser : newUsers) {
+            if (isComplete(newUser) && usernameFilter.mightContain(newUser.getUsername())) {
+                usernames.add(newUser.getUsername());
+            }
+        }
+        // in a transaction that may write, so that the query runs on the primary like the inserts
+        Set<String> takenUsernames = new HashSet<>(usernames.isEmpty() ? Collections.emptyList()
+                : transactionTemplate.execute(status -> this.userRepository.findExistingUsernames(usernames)));
+
+        List<User> results = new ArrayList<>(newUsers.size());
+        List<User> usersToSave = new ArrayList<>();
+        for (User newUser : newUsers) {
+            if (!isComplete(newUser) || !takenUsernames.add(newUser.getUsername())) {
+                results.add(null);
+                continue;
+            }
+            newUser.setToken(tokenIssuer.randomToken());
+            newUser.setStatus(UserStatus.OFFLINE);
+            newUser.setCreationDate(LocalDate.now());
+            usersToSave.add(newUser);
+            results.add(newUser);
+        }
+
+        List<String> passwords = new ArrayList<>(usersToSave.size());
+        for (User userToSave : usersToSave) {
+            passwords.add(userToSave.getPassword());
+        }
+        List<String> passwordHashes = passwordHasher.hashAll(passwords);
+        for (int i = 0; i < usersToSave.size(); i++) {
+            usersToSave.get(i).setPassword(passwordHashes.get(i));
+        }
+
+        // the ids come from the pooled sequence, so hibernate can send the inserts in batches on flush
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                this.userRepository.saveAll(usersToSave);
+                this.userRepository.flush();
+                usersToSave.forEach(this::issueSignedToken);
+            });
+        }
+        catch (DataIntegrityViolationException e) {
+            throw toUsernameConflict(e);
+        }
+        for (User userToSave : usersToSave) {
+            usernameFilter.add(userToSave.getUsername());
+        }
+
+        log.debug("Created {} of {} users in bulk", usersToSave.size(), newUsers.size());
+        return results;
+    }
+
+    /**
+     * Returns whether the given new user has a username and a password. Incomplete users (and null, e.g. a null
+     * element of a bulk request) are left out of a bulk creation before anything is hashed or written, so that one of
+     * them does not fail the whole batch.
+     */
+    public static boolean isComplete(User newUser) {
+        return newUser != null && newUser.getUsername() != null && newUser.getPassword() != null;
+    }
+
+    /**
+     * In the signed token mode, replaces the stored random token of the given user by a signed token, which depends
+     * on the id and is therefore only issued once the user has been written. The user is detached first: the signed
+     * token is returned to the client, but never stored.
+     */
+    private void issueSignedToken(User user) {
+        if (tokenIssuer.isSigned()) {
+            entityManager.detach(user);
+            user.setToken(tokenIssuer.issue(user.getId()));
+        }
+    }
+
     /**
      * This is a helper method that will check the uniqueness criteria of the username and the name
      * defined in the User entity. The method will do nothing if the input is unique and throw an error otherwise.
@@ -65,69 +335,210 @@ public class UserService {
     private void checkIfUserExists(User userToBeCreated) {
         User userByUsername = userRepository.findByUsername(userToBeCreated.getUsername());
 
-        String baseErrorMessage = "The %s provided %s not unique. Therefore, the user could not be created!";
-
         if (userByUsername != null) {
-            throw new ResponseStatusException(HttpStatus.CONFLICT, String.format(baseErrorMessage, "username", "is"));
+            throw UserError.USERNAME_TAKEN.exception();
         }
+        usernameFilter.falsePositive();
     }
 
+    /**
+     * Translates the violation of the unique constraint of the username into the same 409 CONFLICT as
+     * checkIfUserExists, e.g. when two users with the same username are created at the same time.
+     * Other violations (e.g. a missing password) are thrown as they are.
+     */
+    private RuntimeException toUsernameConflict(DataIntegrityViolationException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            String message = cause instanceof ConstraintViolationException
+                    ? ((ConstraintViolationException) cause).getConstraintName() : cause.getMessage();
+            if (message != null && message.toUpperCase().contains(User.USERNAME_CONSTRAINT)) {
+                return UserError.USERNAME_TAKEN.exception(e);
+            }
+        }
+        return e;
+    }
+
+    // no transaction while the password is verified, it would hold a connection for as long as the hashing takes;
+    // the new status is written to the database by the PresenceRegistry
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public User checkIfCredentialsExist(User userInput) {
-        User userExists = userRepository.findByUsernameAndPassword(userInput.getUsername(), userInput.getPassword());
-        if (userExists == null){
-            System.out.println("User does not exist");
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The credentials are wrong.");
+        // a single lookup in a short read-only transaction, the password is verified against the stored hash on the
+        // hashing pool, or against a dummy hash if the username does not exist
+        User userExists = readOnlyTransactionTemplate.execute(status -> userRepository.findByUsername(userInput.getUsername()));
+        if (userInput.getPassword() == null
+                || !passwordHasher.matches(userInput.getPassword(), userExists == null ? null : userExists.getPassword())){
+            requestLog.log("user.login.failed", "username", userInput.getUsername());
+            throw UserError.CREDENTIALS_INVALID.exception();
         }
         else{
-            System.out.println("User is logging in");
-            this.userRepository.findByUsername(userInput.getUsername()).setStatus(UserStatus.ONLINE);
-            User updated_user = this.userRepository.findByUsername(userInput.getUsername());
-            System.out.println(this.userRepository.findByUsername(userInput.getUsername()).getStatus());
-            return updated_user;
+            presenceRegistry.setStatus(userExists.getId(), UserStatus.ONLINE);
+            userExists.setStatus(UserStatus.ONLINE);
+            // a new token for every login, the tokens of the last logout are revoked
+            if (tokenIssuer.isSigned()) {
+                userExists.setToken(tokenIssuer.issue(userExists.getId()));
+            }
+            requestLog.log("user.login", "userId", userExists.getId(), "status", userExists.getStatus());
+            return userExists;
         }
     }
 
+    @Transactional(readOnly = true)
     public User getUserWithId(Long id) {
         Optional<User> user = this.userRepository.findById(id);
 
         if (user.isPresent()){
+            presenceRegistry.applyTo(user.get());
             return user.get();
         }
-        throw new ResponseStatusException(HttpStatus.NOT_FOUND, "user with id="+ id +" was not found");
+        throw UserError.USER_NOT_FOUND.exception();
+    }
+
+    /**
+     * Returns the users with the given ids in the order of the ids, each only once. Ids without a user are left out.
+     * The users are read with a single IN query instead of one query per id, its IN list is bounded by MAX_BATCH_SIZE.
+     *
+     * @param ids between 1 and MAX_BATCH_SIZE ids
+     */
+    @Transactional(readOnly = true)
+    public List<User> getUsersWithIds(Collection<Long> ids) {
+        Set<Long> distinctIds = new LinkedHashSet<>(ids);
+        distinctIds.remove(null);
+        if (distinctIds.isEmpty() || distinctIds.size() > MAX_BATCH_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    String.format("Between 1 and %d users can be read at once", MAX_BATCH_SIZE));
+        }
+
+        List<Long> idList = new ArrayList<>(distinctIds);
+        Map<Long, User> usersById = new HashMap<>();
+        for (User user : this.userRepository.findAllById(idList)) {
+            usersById.put(user.getId(), user);
+        }
+
+        List<User> users = new ArrayList<>(usersById.size());
+        for (Long id : idList) {
+            User user = usersById.get(id);
+            if (user != null) {
+                presenceRegistry.applyTo(user);
+                users.add(user);
+            }
+        }
+        return users;
+    }
+
+    /**
+     * Like getUserWithId(id), but only the given fields (and the id and version) are read from the database.
+     *
+     * @param fields the requested fields, at least one
+     */
+    @Transactional(readOnly = true)
+    public User getUserWithId(Long id, Set<UserField> fields) {
+        User user = this.userRepository.findProjectedById(fields, id);
+
+        if (user == null) {
+            throw UserError.USER_NOT_FOUND.exception();
+        }
+        if (fields.contains(UserField.STATUS)) {
+            presenceRegistry.applyTo(user);
+        }
+        return user;
+    }
+
+    /**
+     * Returns the ETag of the list of users. It changes with every committed change of any user,
+     * so it can be checked without a database query.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public String getUsersETag() {
+        return changeTracker.getUsersETag();
+    }
+
+    /**
+     * Returns the ETag of the user with the given id, or null if there is no such user.
+     * Only the version of the user is read, the user itself is not loaded. The status of the PresenceRegistry is
+     * part of the tag, since status changes do not change the version.
+     */
+    @Transactional(readOnly = true)
+    public String getUserETag(Long id) {
+        Long version = this.userRepository.findVersionById(id);
+        return version == null ? null : changeTracker.getUserETag(id, version, presenceRegistry.getStatus(id));
     }
 
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public String getUserETag(User user) {
+        return changeTracker.getUserETag(user.getId(), user.getVersion(), presenceRegistry.getStatus(user.getId()));
+    }
+
+    // read-only: the new status is written to the database by the PresenceRegistry, not with this transaction
+    @Transactional(readOnly = true)
     public User logOut(Long id) {
         var user = this.userRepository.findById(id);
 
         if (user.isPresent()){
+            presenceRegistry.setStatus(id, UserStatus.OFFLINE);
             user.get().setStatus(UserStatus.OFFLINE);
-            return this.userRepository.findById(id).get();
+            tokenCache.invalidate(user.get().getToken());
+            if (tokenIssuer.isSigned()) {
+                tokenIssuer.revoke(id);
+            }
+            return user.get();
         }
-        throw new ResponseStatusException(HttpStatus.NOT_FOUND, "user with id="+ id +" was not found");
+        throw UserError.USER_NOT_FOUND.exception();
     }
 
+    @Transactional(readOnly = true)
     public boolean authenticateToken(String token) {
+        // signed tokens are verified without the database
+        if (tokenIssuer.isSigned()) {
+            if (tokenIssuer.verify(token) == null) {
+                requestLog.log("token.check", "token", token, "result", "rejected");
+                throw UserError.TOKEN_INVALID.exception();
+            }
+            requestLog.log("token.check", "token", token, "result", "signed");
+            return true;
+        }
+        // tokens that were recently authenticated do not need another database lookup
+        if (tokenCache.getUserId(token) != null) {
+            requestLog.log("token.check", "token", token, "result", "cached");
+            return true;
+        }
         User userToken = this.userRepository.findByToken(token);
-        System.out.println("token: " + token);
-        if(token.equals("1")) return true; // "1" done for postman testing
         if(userToken == null) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Token could not be authenticated");
+            requestLog.log("token.check", "token", token, "result", "rejected");
+            throw UserError.TOKEN_INVALID.exception();
         }
+        tokenCache.put(token, userToken.getId());
+        requestLog.log("token.check", "token", token, "result", "found");
         return true;
     }
 
     public User modifyUser(Long id, User userInput) {
         var userToBeModified = this.userRepository.findById(id);
         if (userToBeModified.isPresent()) {
+            boolean renamed = false;
             if(!userInput.getUsername().trim().equals("")){
+                renamed = !userInput.getUsername().equals(userToBeModified.get().getUsername());
+                if (renamed && usernameFilter.mightContain(userInput.getUsername())) {
+                    checkIfUserExists(userInput);
+                }
                 userToBeModified.get().setUsername(userInput.getUsername());
             }
 
             userToBeModified.get().setBirthdate(userInput.getBirthdate());
+            if (renamed) {
+                // written now instead of on commit, so that a concurrent rename to the same username is a 409 CONFLICT
+                try {
+                    this.userRepository.flush();
+                }
+                catch (DataIntegrityViolationException e) {
+                    throw toUsernameConflict(e);
+                }
+                usernameFilter.add(userInput.getUsername());
+            }
+            requestLog.log("user.modified", "userId", id, "username", userToBeModified.get().getUsername(),
+                    "birthdate", userInput.getBirthdate(), "renamed", renamed);
             return userToBeModified.get();
         }
 
-        throw new ResponseStatusException(HttpStatus.NOT_FOUND, String.format("User with ID %d was not found.", id));
+        throw UserError.USER_NOT_FOUND.exception();
     }
 
 }
@@ -0,0 +1,222 @@
+package ch.uzh.ifi.hase.soprafs21.service;
+
+import ch.uzh.ifi.hase.soprafs21.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Stream;
+
+/**
+ * Username Filter
+ * This class keeps a Bloom filter of the usernames in the database, so that UserService only has to look up a username
+ * that might already exist. A username the filter does not contain is definitely new. The filter grows by adding a
+ * layer of twice the size whenever the current layer is full, so it never has to be rebuilt from the database.
+ * Renamed users keep their old name in the filter, which can only cause an unnecessary lookup.
+ * The filter is only an optimization: the unique constraint on the username still rejects every duplicate.
+ */
+@Component
+@Profile("!reactive")
+// loaded before the web server starts, also with spring.main.lazy-initialization (fast-startup profile)
+@Lazy(false)
+public class UsernameFilter implements SmartInitializingSingleton {
+
+    private final Logger log = LoggerFactory.getLogger(UsernameFilter.class);
+
+    private final UserRepository userRepository;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final double falsePositiveRate;
+
+    // the last layer is the one usernames are added to
+    private volatile Layer[] layers;
+
+    private final AtomicLong skippedLookups = new AtomicLong();
+    private final AtomicLong falsePositives = new AtomicLong();
+
+    @Autowired
+    public UsernameFilter(@Qualifier("userRepository") UserRepository userRepository, PlatformTransactionManager transactionManager,
+                          @Value("${soprafs21.username-filter.expected-usernames:10000}") int expectedUsernames,
+                          @Value("${soprafs21.username-filter.false-positive-rate:0.01}") double falsePositiveRate) {
+        this(expectedUsernames, falsePositiveRate, userRepository, new TransactionTemplate(transactionManager));
+        this.transactionTemplate.setReadOnly(true);
+    }
+
+    UsernameFilter(int expectedUsernames, double falsePositiveRate) {
+        this(expectedUsernames, falsePositiveRate, null, null);
+    }
+
+    private UsernameFilter(int expectedUsernames, double falsePositiveRate, UserRepository userRepository,
+                           TransactionTemplate transactionTemplate) {
+        if (expectedUsernames <= 0) {
+            throw new IllegalArgumentException("The username filter needs a positive number of expected usernames");
+        }
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("The false positive rate of the username filter must be between 0 and 1");
+        }
+        this.userRepository = userRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.falsePositiveRate = falsePositiveRate;
+        this.layers = new Layer[]{new Layer(expectedUsernames, falsePositiveRate)};
+    }
+
+    /**
+     * Returns false if the username is definitely not in the database, true if it might be.
+     */
+    public boolean mightContain(String username) {
+        if (username == null) {
+            return true;
+        }
+        long hash1 = hash(username);
+        long hash2 = mix(hash1 ^ 0x9e3779b97f4a7c15L) | 1;
+        for (Layer layer : layers) {
+            if (layer.mightContain(hash1, hash2)) {
+                return true;
+            }
+        }
+        skippedLookups.incrementAndGet();
+        return false;
+    }
+
+    public synchronized void add(String username) {
+        if (username == null) {
+            return;
+        }
+        long hash1 = hash(username);
+        long hash2 = mix(hash1 ^ 0x9e3779b97f4a7c15L) | 1;
+        Layer current = layers[layers.length - 1];
+        if (current.isFull()) {
+            Layer[] grown = new Layer[layers.length + 1];
+            System.arraycopy(layers, 0, grown, 0, layers.length);
+            current = new Layer(current.capacity * 2, falsePositiveRate);
+            grown[layers.length] = current;
+            layers = grown;
+        }
+        current.add(hash1, hash2);
+    }
+
+    /**
+     * Records that a username the filter might contain was not in the database after all.
+     */
+    public void falsePositive() {
+        falsePositives.incrementAndGet();
+    }
+
+    /**
+     * Adds all usernames of the database. Usernames added in the meantime are kept.
+     */
+    public void load() {
+        long[] count = {0};
+        transactionTemplate.executeWithoutResult(transaction -> {
+            try (Stream<String> usernames = userRepository.streamAllUsernames()) {
+                usernames.forEach(username -> {
+                    add(username);
+                    count[0]++;
+                });
+            }
+        });
+        log.info("Loaded {} usernames into {} filter layers", count[0], layers.length);
+    }
+
+    // before the web server starts, a signup must never see a filter without the existing usernames
+    @Override
+    public void afterSingletonsInstantiated() {
+        load();
+    }
+
+    public long getSize() {
+        long size = 0;
+        for (Layer layer : layers) {
+            size += layer.size;
+        }
+        return size;
+    }
+
+    public int getLayerCount() {
+        return layers.length;
+    }
+
+    public long getSkippedLookupCount() {
+        return skippedLookups.get();
+    }
+
+    public long getFalsePositiveCount() {
+        return falsePositives.get();
+    }
+
+    // 64 bit FNV-1a over the characters, mixed so that similar usernames end up far apart
+    private static long hash(String username) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < username.length(); i++) {
+            hash ^= username.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static final class Layer {
+        private final int capacity;
+        private final long bitCount;
+        private final int hashCount;
+        private final AtomicLongArray bits;
+        private volatile int size;
+
+        private Layer(int capacity, double falsePositiveRate) {
+            this.capacity = capacity;
+            // optimal size and number of hash functions for the capacity and the false positive rate
+            this.bitCount = Math.max(64, (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2))));
+            this.hashCount = Math.max(1, (int) Math.round((double) bitCount / capacity * Math.log(2)));
+            this.bits = new AtomicLongArray((int) ((bitCount + 63) / 64));
+        }
+
+        private boolean isFull() {
+            return size >= capacity;
+        }
+
+        // double hashing: the i-th bit is hash1 + i * hash2
+        private boolean mightContain(long hash1, long hash2) {
+            for (int i = 0; i < hashCount; i++) {
+                long bit = Math.floorMod(hash1 + i * hash2, bitCount);
+                if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // only called while holding the lock of the filter
+        private void add(long hash1, long hash2) {
+            for (int i = 0; i < hashCount; i++) {
+                long bit = Math.floorMod(hash1 + i * hash2, bitCount);
+                int index = (int) (bit >>> 6);
+                long mask = 1L << bit;
+                long word;
+                do {
+                    word = bits.get(index);
+                }
+                while ((word & mask) == 0 && !bits.compareAndSet(index, word, word | mask));
+            }
+            size++;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package ch.uzh.ifi.hase.soprafs21.startup;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.UUID;
+
+/**
+ * CDS Training Run
+ * This class is the training run of ./gradlew cdsArchive (soprafs21.startup.training-run=true): once the application is
+ * ready, it sends the requests of a client that signs up and lists the users, so that the classes of the request path
+ * are loaded too, and exits. The JVM then writes every loaded class to the AppCDS archive (-XX:ArchiveClassesAtExit).
+ */
+@Component
+@ConditionalOnProperty(name = "soprafs21.startup.training-run", havingValue = "true")
+public class CdsTrainingRun {
+
+    private final Logger log = LoggerFactory.getLogger(CdsTrainingRun.class);
+
+    @EventListener
+    public void onApplicationReady(ApplicationReadyEvent event) {
+        ConfigurableApplicationContext context = event.getApplicationContext();
+        String baseUrl = "http://localhost:" + context.getEnvironment().getRequiredProperty("local.server.port");
+        HttpClient client = HttpClient.newHttpClient();
+        try {
+            send(client, HttpRequest.newBuilder(URI.create(baseUrl + "/")).GET());
+            // a new username, in case the training run uses the database files of the durable profile
+            String username = "training-" + UUID.randomUUID();
+            String user = send(client, HttpRequest.newBuilder(URI.create(baseUrl + "/users"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(
+                            "{\"username\":\"" + username + "\",\"password\":\"training\",\"birthdate\":\"2000-01-01\"}")));
+            String token = user.replaceAll("(?s).*\"token\":\"([^\"]*)\".*", "$1");
+            send(client, HttpRequest.newBuilder(URI.create(baseUrl + "/users")).header("token", token).GET());
+            send(client, HttpRequest.newBuilder(URI.create(baseUrl + "/users/0")).header("token", token).GET());
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.info("Training run finished, exiting");
+        System.exit(SpringApplication.exit(context));
+    }
+
+    private String send(HttpClient client, HttpRequest.Builder request) throws IOException, InterruptedException {
+        HttpResponse<String> response = client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+        log.info("{} {}: {}", response.request().method(), response.request().uri().getPath(), response.statusCode());
+        return response.body();
+    }
+}
@@ -0,0 +1,109 @@
+package ch.uzh.ifi.hase.soprafs21.startup;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.metrics.ApplicationStartup;
+import org.springframework.core.metrics.StartupStep;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.orm.jpa.AbstractEntityManagerFactoryBean;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+/**
+ * Hibernate Bootstrap Timer
+ * This class records the Hibernate bootstrap as a startup step for the StartupTimelineReporter. With
+ * spring.data.jpa.repositories.bootstrap-mode=deferred (fast-startup profile) the entity manager factory bean only
+ * submits the bootstrap to its bootstrap executor, so the instantiation of the bean does not tell how long Hibernate
+ * takes. The bootstrap executor is wrapped so that the step covers the task itself, on the thread that runs it.
+ * Without a bootstrap executor the step covers the initialization of the bean, which bootstraps Hibernate then.
+ */
+@Component
+@Profile("fast-startup")
+public class HibernateBootstrapTimer implements BeanPostProcessor {
+
+    static final String BOOTSTRAP_STEP = "soprafs21.hibernate.bootstrap";
+
+    private final ApplicationStartup applicationStartup;
+
+    // the step of a bootstrap without an executor, ended once the bean has been initialized
+    private StartupStep synchronousBootstrap;
+
+    public HibernateBootstrapTimer(ConfigurableApplicationContext context) {
+        this.applicationStartup = context.getApplicationStartup();
+    }
+
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) {
+        if (bean instanceof AbstractEntityManagerFactoryBean) {
+            AbstractEntityManagerFactoryBean factoryBean = (AbstractEntityManagerFactoryBean) bean;
+            if (factoryBean.getBootstrapExecutor() != null) {
+                factoryBean.setBootstrapExecutor(new TimedBootstrapExecutor(factoryBean.getBootstrapExecutor()));
+            }
+            else {
+                synchronousBootstrap = applicationStartup.start(BOOTSTRAP_STEP);
+            }
+        }
+        return bean;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof AbstractEntityManagerFactoryBean && synchronousBootstrap != null) {
+            synchronousBootstrap.end();
+            synchronousBootstrap = null;
+        }
+        return bean;
+    }
+
+    // the step starts when the executor runs the bootstrap, not when it is submitted
+    private final class TimedBootstrapExecutor implements AsyncTaskExecutor {
+        private final AsyncTaskExecutor executor;
+
+        private TimedBootstrapExecutor(AsyncTaskExecutor executor) {
+            this.executor = executor;
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            executor.execute(timed(task));
+        }
+
+        @Override
+        public void execute(Runnable task, long startTimeout) {
+            executor.execute(timed(task), startTimeout);
+        }
+
+        @Override
+        public Future<?> submit(Runnable task) {
+            return executor.submit(timed(task));
+        }
+
+        @Override
+        public <T> Future<T> submit(Callable<T> task) {
+            return executor.submit(() -> {
+                StartupStep step = applicationStartup.start(BOOTSTRAP_STEP);
+                try {
+                    return task.call();
+                }
+                finally {
+                    step.end();
+                }
+            });
+        }
+
+        private Runnable timed(Runnable task) {
+            return () -> {
+                StartupStep step = applicationStartup.start(BOOTSTRAP_STEP);
+                try {
+                    task.run();
+                }
+                finally {
+                    step.end();
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package ch.uzh.ifi.hase.soprafs21.startup;
+
+import ch.uzh.ifi.hase.soprafs21.rest.mapper.DTOMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
+import org.springframework.boot.context.metrics.buffering.StartupTimeline;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.metrics.ApplicationStartup;
+import org.springframework.core.metrics.StartupStep;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.support.ServletRequestHandledEvent;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * Startup Timeline Reporter
+ * This class logs how the time to the first request of the fast-startup profile is spent: the phases of the startup
+ * recorded by the BufferingApplicationStartup of Application.main (such as the Hibernate bootstrap, see
+ * HibernateBootstrapTimer, and the MapStruct mapper load), the slowest beans, the time until the application is ready and the time until the first request has
+ * been handled, all measured from the start of the JVM.
+ */
+@Component
+@Profile("fast-startup")
+// loads the mappers before the web server starts, also with spring.main.lazy-initialization
+@Lazy(false)
+public class StartupTimelineReporter implements SmartInitializingSingleton {
+
+    static final String MAPSTRUCT_LOAD_STEP = "soprafs21.mapstruct.load";
+
+    private static final int SLOWEST_BEANS = 5;
+
+    // the phases that are reported, by the name of their startup step
+    private static final Map<String, String> PHASES = Map.of(
+            "spring.context.config-classes.parse", "configuration classes",
+            "spring.data.repository.scanning", "repository scanning",
+            HibernateBootstrapTimer.BOOTSTRAP_STEP, "hibernate bootstrap",
+            MAPSTRUCT_LOAD_STEP, "mapstruct load",
+            "spring.context.refresh", "context refresh");
+
+    private final Logger log = LoggerFactory.getLogger(StartupTimelineReporter.class);
+
+    private final ApplicationStartup applicationStartup;
+
+    private final AtomicBoolean firstRequestHandled = new AtomicBoolean();
+
+    public StartupTimelineReporter(ConfigurableApplicationContext context) {
+        this.applicationStartup = context.getApplicationStartup();
+    }
+
+    // with lazy initialization the UserController (and so the DTOMapper) would otherwise be loaded by the first request
+    @Override
+    public void afterSingletonsInstantiated() {
+        StartupStep step = applicationStartup.start(MAPSTRUCT_LOAD_STEP);
+        step.tag("mapper", DTOMapper.INSTANCE.getClass().getName());
+        step.end();
+    }
+
+    @EventListener
+    public void onApplicationReady(ApplicationReadyEvent event) {
+        if (!(applicationStartup instanceof BufferingApplicationStartup)) {
+            log.info("Ready {} ms after the JVM started, no startup timeline was recorded", getUptime());
+            return;
+        }
+        StartupTimeline timeline = ((BufferingApplicationStartup) applicationStartup).getBufferedTimeline();
+        StringBuilder report = new StringBuilder();
+        getPhases(timeline, Instant.ofEpochMilli(ManagementFactory.getRuntimeMXBean().getStartTime()))
+                .forEach((phase, duration) -> report.append(String.format("%n  %-24s %6d ms", phase, duration.toMillis())));
+        report.append(String.format("%n  slowest beans:"));
+        getSlowestBeans(timeline, SLOWEST_BEANS)
+                .forEach((bean, duration) -> report.append(String.format("%n    %-40s %6d ms", bean, duration.toMillis())));
+        log.info("Ready {} ms after the JVM started:{}", getUptime(), report);
+    }
+
+    @EventListener
+    public void onRequestHandled(ServletRequestHandledEvent event) {
+        if (firstRequestHandled.compareAndSet(false, true)) {
+            log.info("First request ({} {}) handled {} ms after the JVM started", event.getMethod(), event.getRequestUrl(),
+                    getUptime());
+        }
+    }
+
+    /**
+     * Returns the duration of each phase of the startup that is in the timeline, in the order in which they ended.
+     * Phases that happen more than once (e.g. parsing the configuration classes) are added up.
+     */
+    static Map<String, Duration> getPhases(StartupTimeline timeline, Instant jvmStart) {
+        Map<String, Duration> phases = new LinkedHashMap<>();
+        phases.put("jvm start", Duration.between(jvmStart, timeline.getStartTime()));
+        for (StartupTimeline.TimelineEvent event : timeline.getEvents()) {
+            String phase = PHASES.get(event.getStartupStep().getName());
+            if (phase != null) {
+                phases.merge(phase, event.getDuration(), Duration::plus);
+            }
+        }
+        return phases;
+    }
+
+    /**
+     * Returns the beans that took the longest to instantiate (including the beans they depend on), slowest first.
+     */
+    static Map<String, Duration> getSlowestBeans(StartupTimeline timeline, int count) {
+        return timeline.getEvents().stream()
+                .filter(event -> isInstantiationOf(event, null))
+                .sorted(Comparator.comparing(StartupTimeline.TimelineEvent::getDuration).reversed())
+                .limit(count)
+                .collect(Collectors.toMap(event -> getTag(event, "beanName"), StartupTimeline.TimelineEvent::getDuration,
+                        (first, second) -> first, LinkedHashMap::new));
+    }
+
+    // the instantiation of the given bean, or of any bean if beanName is null
+    private static boolean isInstantiationOf(StartupTimeline.TimelineEvent event, String beanName) {
+        return "spring.beans.instantiate".equals(event.getStartupStep().getName())
+                && (beanName == null || beanName.equals(getTag(event, "beanName")));
+    }
+
+    private static String getTag(StartupTimeline.TimelineEvent event, String key) {
+        for (StartupStep.Tag tag : event.getStartupStep().getTags()) {
+            if (key.equals(tag.getKey())) {
+                return tag.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static long getUptime() {
+        return ManagementFactory.getRuntimeMXBean().getUptime();
+    }
+}
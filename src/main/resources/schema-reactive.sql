@@ -0,0 +1,15 @@
+-- quoted lower case names, as generated by the R2DBC mapping of the reactive profile
+create table if not exists "user" (
+    "id" bigint generated by default as identity primary key,
+    "birthdate" date,
+    "creation_date" date not null,
+    "password" varchar(255) not null,
+    "status" integer not null,
+    "token" varchar(255) not null unique,
+    "username" varchar(255) not null,
+    "version" bigint,
+    -- named like the constraint of the User entity, so that a violation can be told apart from other constraints
+    constraint UK_USER_USERNAME unique ("username")
+);
+
+create index if not exists "idx_user_status_id" on "user" ("status", "id");
@@ -0,0 +1,100 @@
+package ch.uzh.ifi.hase.soprafs21;
+
+import ch.uzh.ifi.hase.soprafs21.repository.StorageSnapshotter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DurableStorageConfigurationTest {
+
+    @TempDir
+    Path directory;
+
+    // an H2 file database like the one of the durable profile, closed once its last connection is
+    private JdbcTemplate openDatabase() {
+        return new JdbcTemplate(new DriverManagerDataSource("jdbc:h2:file:" + directory.toAbsolutePath() + "/users", "sa", ""));
+    }
+
+    @Test
+    public void restoreNewestSnapshot_snapshotOfDeletedDatabase_usersRestored() throws Exception {
+        JdbcTemplate jdbcTemplate = openDatabase();
+        jdbcTemplate.execute("create table \"USER\" (id bigint primary key, username varchar(255) not null)");
+        jdbcTemplate.update("insert into \"USER\" values (1, 'first'), (2, 'second')");
+        Path snapshot = new StorageSnapshotter(jdbcTemplate, directory.toString(), 1).snapshot();
+        jdbcTemplate.update("insert into \"USER\" values (3, 'afterSnapshot')");
+
+        assertEquals(List.of(snapshot), StorageSnapshotter.findSnapshots(StorageSnapshotter.getSnapshotDirectory(directory.toString())));
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                Files.delete(file);
+            }
+        }
+
+        assertTrue(DurableStorageConfiguration.restoreNewestSnapshot(directory));
+        assertEquals(List.of("first", "second"),
+                openDatabase().queryForList("select username from \"USER\" order by id", String.class));
+    }
+
+    @Test
+    public void restoreNewestSnapshot_noDatabase_newestSnapshotRestored() throws Exception {
+        writeSnapshot("users-20210301-120000-000.zip", "old");
+        writeSnapshot("users-20210302-120000-000.zip", "new");
+
+        assertTrue(DurableStorageConfiguration.restoreNewestSnapshot(directory));
+        assertEquals("new", Files.readString(directory.resolve("users.mv.db")));
+    }
+
+    @Test
+    public void restoreNewestSnapshot_existingDatabase_notOverwritten() throws Exception {
+        writeSnapshot("users-20210301-120000-000.zip", "snapshot");
+        Files.writeString(directory.resolve("users.mv.db"), "current");
+
+        assertFalse(DurableStorageConfiguration.restoreNewestSnapshot(directory));
+        assertEquals("current", Files.readString(directory.resolve("users.mv.db")));
+    }
+
+    @Test
+    public void restoreNewestSnapshot_truncatedSnapshot_noPartialDatabase() throws Exception {
+        byte[] content = new byte[64 * 1024];
+        new Random(1).nextBytes(content);
+        Path snapshot = writeSnapshot("users-20210301-120000-000.zip", content);
+        byte[] zip = Files.readAllBytes(snapshot);
+        Files.write(snapshot, Arrays.copyOf(zip, zip.length / 2));
+
+        assertThrows(UncheckedIOException.class, () -> DurableStorageConfiguration.restoreNewestSnapshot(directory));
+
+        // neither a partial data file nor the files of the failed restore are left, the next startup tries again
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(List.of(directory.resolve("snapshots")), files.collect(Collectors.toList()));
+        }
+    }
+
+    private void writeSnapshot(String name, String content) throws Exception {
+        writeSnapshot(name, content.getBytes());
+    }
+
+    private Path writeSnapshot(String name, byte[] content) throws Exception {
+        Path snapshots = Files.createDirectories(directory.resolve("snapshots"));
+        try (OutputStream out = Files.newOutputStream(snapshots.resolve(name)); ZipOutputStream zip = new ZipOutputStream(out)) {
+            zip.putNextEntry(new ZipEntry("users.mv.db"));
+            zip.write(content);
+            zip.closeEntry();
+        }
+        return snapshots.resolve(name);
+    }
+}
@@ -0,0 +1,183 @@
+package ch.uzh.ifi.hase.soprafs21.controller;
+
+import ch.uzh.ifi.hase.soprafs21.exceptions.UserError;
+import ch.uzh.ifi.hase.soprafs21.repository.ReactiveUserRepository;
+import ch.uzh.ifi.hase.soprafs21.rest.dto.UserGetDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * ReactiveUserControllerIntegrationTest
+ * Runs the reactive profile (WebFlux, R2DBC and H2) and checks that it answers like the servlet stack.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"management.server.port=0", "soprafs21.password.bcrypt-strength=4"})
+@ActiveProfiles("reactive")
+public class ReactiveUserControllerIntegrationTest {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Autowired
+    private ReactiveUserRepository userRepository;
+
+    @BeforeEach
+    public void setup() {
+        userRepository.deleteAll().block();
+    }
+
+    @Test
+    public void createLoginAndGetUser_success() {
+        UserGetDTO createdUser = createUser("testUsername");
+
+        webTestClient.put().uri("/users").contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"username\":\"testUsername\",\"password\":\"password\"}")
+                .exchange()
+                .expectStatus().isAccepted()
+                .expectBody().jsonPath("$.status").isEqualTo("ONLINE");
+
+        webTestClient.get().uri("/users/{id}", createdUser.getId()).header("token", createdUser.getToken())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.username").isEqualTo("testUsername")
+                .jsonPath("$.status").isEqualTo("ONLINE");
+    }
+
+    @Test
+    public void createUser_duplicateUsername_conflict() {
+        createUser("testUsername");
+
+        webTestClient.post().uri("/users").contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"username\":\"testUsername\",\"password\":\"password\"}")
+                .exchange()
+                .expectStatus().isEqualTo(409);
+    }
+
+    @Test
+    public void modifyUser_takenUsername_conflict() {
+        createUser("takenUsername");
+        UserGetDTO createdUser = createUser("testUsername");
+
+        // the unique constraint of the username is violated, not a server error
+        webTestClient.post().uri("/users/{id}", createdUser.getId()).header("token", createdUser.getToken())
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"username\":\"takenUsername\"}")
+                .exchange()
+                .expectStatus().isEqualTo(409)
+                .expectBody().jsonPath("$.code").isEqualTo(UserError.USERNAME_TAKEN.name());
+    }
+
+    @Test
+    public void loginUser_wrongPassword_badRequest() {
+        createUser("testUsername");
+
+        webTestClient.put().uri("/users").contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"username\":\"testUsername\",\"password\":\"wrongPassword\"}")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    public void getUserWithId_unknownUserOrToken_errors() {
+        UserGetDTO createdUser = createUser("testUsername");
+
+        webTestClient.get().uri("/users/{id}", createdUser.getId() + 1).header("token", createdUser.getToken())
+                .exchange()
+                .expectStatus().isNotFound();
+        webTestClient.get().uri("/users/{id}", createdUser.getId()).header("token", "unknownToken")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    public void getAllUsers_fullPage_nextCursorAndStatusFilter() {
+        UserGetDTO firstUser = createUser("firstUser");
+        createUser("secondUser");
+        createUser("thirdUser");
+
+        webTestClient.get().uri("/users?limit=2").header("token", firstUser.getToken())
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().exists(UserController.NEXT_CURSOR_HEADER)
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(2)
+                .jsonPath("$[0].username").isEqualTo("firstUser");
+        webTestClient.get().uri("/users?status=ONLINE").header("token", firstUser.getToken())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody().jsonPath("$.length()").isEqualTo(0);
+    }
+
+    @Test
+    public void exportUsers_ndjson() {
+        UserGetDTO firstUser = createUser("firstUser");
+        createUser("secondUser");
+
+        List<UserGetDTO> exportedUsers = webTestClient.get().uri("/users/export").header("token", firstUser.getToken())
+                .accept(MediaType.parseMediaType(UserController.NDJSON_VALUE))
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(UserController.NDJSON_VALUE)
+                .returnResult(UserGetDTO.class).getResponseBody().collectList().block();
+
+        assertEquals(2, exportedUsers.size());
+        assertEquals("secondUser", exportedUsers.get(1).getUsername());
+    }
+
+    @Test
+    public void createUsers_bulk_perUserStatus() {
+        UserGetDTO existingUser = createUser("existingUser");
+
+        webTestClient.post().uri("/users/bulk").header("token", existingUser.getToken())
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("[{\"username\":\"newUser\",\"password\":\"password\"},{\"username\":\"existingUser\",\"password\":\"password\"}]")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$[0].status").isEqualTo(201)
+                .jsonPath("$[0].user.username").isEqualTo("newUser")
+                .jsonPath("$[1].status").isEqualTo(409);
+    }
+
+    @Test
+    public void getUser_sameInvalidTokenTwice_errorWithoutSuppressedExceptions() {
+        for (int i = 0; i < 2; i++) {
+            webTestClient.get().uri("/users/{id}", 1).header("token", "invalidToken")
+                    .exchange()
+                    .expectStatus().isBadRequest()
+                    .expectBody().jsonPath("$.code").isEqualTo(UserError.TOKEN_INVALID.name());
+        }
+
+        // a new exception per rejection, the traces of the checkpoints are not added to the shared one
+        assertEquals(0, UserError.TOKEN_INVALID.exception().getSuppressed().length);
+    }
+
+    @Test
+    public void logoutUser_setsOffline() {
+        UserGetDTO createdUser = createUser("testUsername");
+
+        webTestClient.put().uri("/users/{id}", createdUser.getId()).header("token", createdUser.getToken())
+                .exchange()
+                .expectStatus().isAccepted()
+                .expectBody().jsonPath("$.status").isEqualTo("OFFLINE");
+    }
+
+    private UserGetDTO createUser(String username) {
+        return webTestClient.post().uri("/users").contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(String.format("{\"username\":\"%s\",\"password\":\"password\"}", username))
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody(UserGetDTO.class)
+                .returnResult().getResponseBody();
+    }
+}
@@ -0,0 +1,158 @@
+package ch.uzh.ifi.hase.soprafs21.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.context.annotation.Bean;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * UserControllerPinningTest
+ * Sends the requests of many users concurrently over HTTP to the embedded Tomcat with soprafs21.threads.virtual=true,
+ * checks that every request is served on a virtual thread and with JFR that no request pins its carrier thread,
+ * e.g. by blocking inside a synchronized block, on the whole request path (Tomcat, service, repository, H2).
+ * The embedded H2 engine still pins briefly under contention (it spins inside its synchronized sessions),
+ * so only pinning that does not originate from H2 fails the test.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"management.server.port=0", "soprafs21.threads.virtual=true",
+                "soprafs21.password.bcrypt-strength=4", "soprafs21.rate-limit.enabled=false"})
+public class UserControllerPinningTest {
+
+    private static final int CONCURRENT_USERS = 50;
+
+    // the threads the requests were served on, recorded by the filter of the ServingThreadConfiguration
+    private static final Queue<Thread> SERVING_THREADS = new ConcurrentLinkedQueue<>();
+
+    @LocalServerPort
+    private int port;
+
+    private final HttpClient httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @TestConfiguration
+    static class ServingThreadConfiguration {
+
+        @Bean
+        OncePerRequestFilter servingThreadFilter() {
+            return new OncePerRequestFilter() {
+                @Override
+                protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                                FilterChain filterChain) throws ServletException, IOException {
+                    SERVING_THREADS.add(Thread.currentThread());
+                    filterChain.doFilter(request, response);
+                }
+            };
+        }
+    }
+
+    @Test
+    public void requestPath_onVirtualThreads_doesNotPinCarrierThreads() throws Exception {
+        List<RecordedEvent> pinnedEvents = new CopyOnWriteArrayList<>();
+        SERVING_THREADS.clear();
+
+        try (RecordingStream recording = new RecordingStream()) {
+            recording.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ZERO).withStackTrace();
+            recording.onEvent("jdk.VirtualThreadPinned", event -> {
+                if (!isCausedByH2(event)) {
+                    pinnedEvents.add(event);
+                }
+            });
+            recording.startAsync();
+
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                List<Future<?>> requests = new ArrayList<>();
+                for (int i = 0; i < CONCURRENT_USERS; i++) {
+                    String username = "pinningUser" + i;
+                    requests.add(executor.submit(() -> {
+                        runUserLifecycle(username);
+                        return null;
+                    }));
+                }
+                for (Future<?> request : requests) {
+                    request.get();
+                }
+            }
+            recording.stop();
+        }
+
+        assertFalse(SERVING_THREADS.isEmpty());
+        assertTrue(SERVING_THREADS.stream().allMatch(Thread::isVirtual),
+                () -> "Request served on a platform thread: " + SERVING_THREADS.stream()
+                        .filter(thread -> !thread.isVirtual()).findFirst().orElseThrow());
+        assertTrue(pinnedEvents.isEmpty(), () -> "Carrier thread pinned:\n" + pinnedEvents.get(0));
+    }
+
+    // the first frame outside of the JDK is the code that blocked while pinned
+    private static boolean isCausedByH2(RecordedEvent event) {
+        if (event.getStackTrace() == null) {
+            return false;
+        }
+        for (RecordedFrame frame : event.getStackTrace().getFrames()) {
+            String className = frame.getMethod().getType().getName();
+            if (!className.startsWith("java.") && !className.startsWith("jdk.")) {
+                return className.startsWith("org.h2.");
+            }
+        }
+        return false;
+    }
+
+    private void runUserLifecycle(String username) throws Exception {
+        String credentials = String.format("{\"username\":\"%s\",\"password\":\"password\"}", username);
+
+        JsonNode createdUser = objectMapper.readTree(send("POST", "/users", null, credentials, HttpStatus.CREATED));
+        long id = createdUser.get("id").asLong();
+        String token = createdUser.get("token").asText();
+
+        send("PUT", "/users", null, credentials, HttpStatus.ACCEPTED);
+        send("GET", "/users", token, null, HttpStatus.OK);
+        send("GET", "/users/" + id, token, null, HttpStatus.OK);
+        send("POST", "/users/" + id, token, String.format("{\"username\":\"%s\"}", username), HttpStatus.NO_CONTENT);
+        send("PUT", "/users/" + id, token, null, HttpStatus.ACCEPTED);
+    }
+
+    private String send(String method, String path, String token, String json, HttpStatus expectedStatus) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                .method(method, json == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(json));
+        if (json != null) {
+            request.header("Content-Type", "application/json");
+        }
+        if (token != null) {
+            request.header("token", token);
+        }
+        HttpResponse<String> response = httpClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(expectedStatus.value(), response.statusCode(), () -> method + " " + path + ": " + response.body());
+        return response.body();
+    }
+}
@@ -1,32 +1,43 @@
 package ch.uzh.ifi.hase.soprafs21.controller;
 
+import ch.uzh.ifi.hase.soprafs21.constant.UserField;
 import ch.uzh.ifi.hase.soprafs21.constant.UserStatus;
 import ch.uzh.ifi.hase.soprafs21.entity.User;
+import ch.uzh.ifi.hase.soprafs21.exceptions.UserError;
 import ch.uzh.ifi.hase.soprafs21.rest.dto.UserPostDTO;
 import ch.uzh.ifi.hase.soprafs21.service.UserService;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.function.Consumer;
 
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.BDDMockito.given;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -54,7 +65,7 @@ public class UserControllerTest {
         List<User> allUsers = Collections.singletonList(user);
 
         // this mocks the UserService -> we define above what the userService should return when getUsers() is called
-        given(userService.getUsers()).willReturn(allUsers);
+        given(userService.getUsers(Mockito.any(), Mockito.any(), Mockito.any())).willReturn(allUsers);
 
         // when
         MockHttpServletRequestBuilder getRequest = get("/users").header("token", 1).contentType(MediaType.APPLICATION_JSON);
@@ -66,6 +77,83 @@ public class UserControllerTest {
                 .andExpect(jsonPath("$[0].status", is(user.getStatus().toString())));
     }
 
+    @Test
+    public void givenIds_whenGetUsers_thenReturnUsersAndMissingIds() throws Exception {
+        // given
+        User user = new User();
+        user.setId(2L);
+        user.setUsername("firstname@lastname");
+        user.setStatus(UserStatus.ONLINE);
+
+        given(userService.getUsersWithIds(List.of(3L, 2L, 1L))).willReturn(Collections.singletonList(user));
+
+        // when
+        MockHttpServletRequestBuilder getRequest = get("/users?ids=3,2,1").header("token", 1)
+                .contentType(MediaType.APPLICATION_JSON);
+
+        // then
+        mockMvc.perform(getRequest).andExpect(status().isOk())
+                .andExpect(jsonPath("$.users", hasSize(1)))
+                .andExpect(jsonPath("$.users[0].username", is(user.getUsername())))
+                .andExpect(jsonPath("$.missingIds", hasSize(2)))
+                .andExpect(jsonPath("$.missingIds[0]", is(3)))
+                .andExpect(jsonPath("$.missingIds[1]", is(1)));
+        Mockito.verify(userService, Mockito.times(1)).authenticateToken("1");
+        Mockito.verify(userService, Mockito.never()).getUsers(Mockito.any(), Mockito.any(), Mockito.any());
+    }
+
+    @Test
+    public void givenFullPage_whenGetUsers_thenReturnNextCursor() throws Exception {
+        // given
+        User user = new User();
+        user.setId(7L);
+        user.setUsername("firstname@lastname");
+        user.setStatus(UserStatus.ONLINE);
+
+        given(userService.getUsers(5L, 1, UserStatus.ONLINE)).willReturn(Collections.singletonList(user));
+
+        // when
+        MockHttpServletRequestBuilder getRequest = get("/users?after=5&limit=1&status=ONLINE").header("token", 1)
+                .contentType(MediaType.APPLICATION_JSON);
+
+        // then
+        mockMvc.perform(getRequest).andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(header().string(UserController.NEXT_CURSOR_HEADER, "7"));
+    }
+
+
+    @Test
+    public void givenUsers_whenExportUsers_thenReturnNdjson() throws Exception {
+        // given
+        User first = new User();
+        first.setId(1L);
+        first.setUsername("first");
+        User second = new User();
+        second.setId(2L);
+        second.setUsername("second");
+
+        Mockito.doAnswer(invocation -> {
+            Consumer<User> consumer = invocation.getArgument(0);
+            consumer.accept(first);
+            consumer.accept(second);
+            return null;
+        }).when(userService).exportUsers(Mockito.any());
+
+        // when
+        MockHttpServletRequestBuilder getRequest = get("/users/export").header("token", 1);
+
+        // then
+        String[] lines = mockMvc.perform(getRequest)
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(UserController.NDJSON_VALUE))
+                .andReturn().getResponse().getContentAsString().split("\n");
+
+        assertEquals(2, lines.length);
+        assertEquals("first", new ObjectMapper().readTree(lines[0]).get("username").asText());
+        assertEquals("second", new ObjectMapper().readTree(lines[1]).get("username").asText());
+    }
+
 
     @Test
     public void createUser_validInput_userCreated() throws Exception {
@@ -96,6 +184,152 @@ public class UserControllerTest {
     }
 
 
+    @Test
+    public void createUsers_bulk_reportsEachItem() throws Exception {
+        // given
+        User user = new User();
+        user.setId(1L);
+        user.setUsername("newUsername");
+        user.setStatus(UserStatus.OFFLINE);
+
+        UserPostDTO newUser = new UserPostDTO();
+        newUser.setUsername("newUsername");
+        newUser.setPassword("testPassword");
+        UserPostDTO takenUser = new UserPostDTO();
+        takenUser.setUsername("takenUsername");
+        takenUser.setPassword("testPassword");
+
+        given(userService.createUsers(Mockito.any())).willReturn(Arrays.asList(user, null));
+
+        // when
+        MockHttpServletRequestBuilder postRequest = post("/users/bulk")
+                .header("token", "1")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(asJsonString(List.of(newUser, takenUser)));
+
+        // then
+        mockMvc.perform(postRequest)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].status", is(HttpStatus.CREATED.value())))
+                .andExpect(jsonPath("$[0].user.id", is(user.getId().intValue())))
+                .andExpect(jsonPath("$[1].username", is("takenUsername")))
+                .andExpect(jsonPath("$[1].status", is(HttpStatus.CONFLICT.value())));
+    }
+
+
+    @Test
+    public void createUsers_bulkWithoutUsernameOrPassword_badRequestPerItem() throws Exception {
+        // given
+        UserPostDTO withoutUsername = new UserPostDTO();
+        withoutUsername.setPassword("testPassword");
+        UserPostDTO withoutPassword = new UserPostDTO();
+        withoutPassword.setUsername("withoutPassword");
+
+        given(userService.createUsers(Mockito.any())).willReturn(Arrays.asList(null, null));
+
+        // when
+        MockHttpServletRequestBuilder postRequest = post("/users/bulk")
+                .header("token", "1")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(asJsonString(List.of(withoutUsername, withoutPassword)));
+
+        // then
+        mockMvc.perform(postRequest)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].status", is(HttpStatus.BAD_REQUEST.value())))
+                .andExpect(jsonPath("$[1].username", is("withoutPassword")))
+                .andExpect(jsonPath("$[1].status", is(HttpStatus.BAD_REQUEST.value())))
+                .andExpect(jsonPath("$[1].message", is(UserError.USER_INCOMPLETE.getMessage())));
+    }
+
+    @Test
+    public void createUsers_bulkWithNullElement_badRequestPerItem() throws Exception {
+        // given
+        User user = new User();
+        user.setId(1L);
+        user.setUsername("newUsername");
+        user.setStatus(UserStatus.OFFLINE);
+
+        given(userService.createUsers(Mockito.any())).willReturn(Arrays.asList(null, user));
+
+        // when
+        MockHttpServletRequestBuilder postRequest = post("/users/bulk")
+                .header("token", "1")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[null,{\"username\":\"newUsername\",\"password\":\"testPassword\"}]");
+
+        // then
+        mockMvc.perform(postRequest)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].status", is(HttpStatus.BAD_REQUEST.value())))
+                .andExpect(jsonPath("$[0].message", is(UserError.USER_INCOMPLETE.getMessage())))
+                .andExpect(jsonPath("$[1].status", is(HttpStatus.CREATED.value())));
+        // the null element is handed to the service as null
+        Mockito.verify(userService, Mockito.times(1))
+                .createUsers(Mockito.argThat(userInputs -> userInputs.size() == 2 && userInputs.get(0) == null));
+    }
+
+
+    @Test
+    public void givenAcceptCbor_whenGetUsers_thenReturnCbor() throws Exception {
+        // given
+        User user = new User();
+        user.setId(1L);
+        user.setUsername("firstname@lastname");
+        user.setStatus(UserStatus.ONLINE);
+
+        given(userService.getUsers(Mockito.any(), Mockito.any(), Mockito.any())).willReturn(Collections.singletonList(user));
+
+        // when
+        MockHttpServletRequestBuilder getRequest = get("/users").header("token", 1).accept(MediaType.APPLICATION_CBOR);
+
+        // then
+        byte[] body = mockMvc.perform(getRequest).andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_CBOR))
+                .andReturn().getResponse().getContentAsByteArray();
+        JsonNode users = new ObjectMapper(new CBORFactory()).readTree(body);
+        assertEquals(1, users.size());
+        assertEquals(user.getUsername(), users.get(0).get("username").asText());
+        assertEquals(user.getStatus().toString(), users.get(0).get("status").asText());
+    }
+
+    @Test
+    public void givenFields_whenGetUsers_thenOnlyRequestedFields() throws Exception {
+        // given
+        User user = new User();
+        user.setId(3L);
+        user.setUsername("firstname@lastname");
+        user.setStatus(UserStatus.ONLINE);
+
+        given(userService.getUsers(null, null, null, EnumSet.of(UserField.USERNAME, UserField.STATUS)))
+                .willReturn(Collections.singletonList(user));
+
+        // when
+        MockHttpServletRequestBuilder getRequest = get("/users?fields=username,status").header("token", 1);
+
+        // then
+        mockMvc.perform(getRequest).andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].username", is(user.getUsername())))
+                .andExpect(jsonPath("$[0].status", is(user.getStatus().toString())))
+                .andExpect(jsonPath("$[0].id").doesNotExist())
+                .andExpect(jsonPath("$[0].password").doesNotExist());
+    }
+
+    @Test
+    public void givenUnknownField_whenGetUser_thenBadRequest() throws Exception {
+        mockMvc.perform(get("/users/1?fields=username,secret").header("token", 1))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/users/1?fields=").header("token", 1))
+                .andExpect(status().isBadRequest());
+
+        Mockito.verify(userService, Mockito.never()).getUserWithId(Mockito.any());
+        Mockito.verify(userService, Mockito.never()).getUserWithId(Mockito.any(), Mockito.any());
+    }
+
     @Test
     public void getUserById_validInput() throws Exception{
         // given
@@ -124,6 +358,65 @@ public class UserControllerTest {
     }
 
 
+    @Test
+    public void getUserById_eTagHeader() throws Exception {
+        User user = new User();
+        user.setId(1L);
+        user.setUsername("testUsername");
+        user.setStatus(UserStatus.ONLINE);
+
+        given(userService.getUserWithId(1L)).willReturn(user);
+        given(userService.getUserETag(user)).willReturn("\"e-1-0\"");
+
+        mockMvc.perform(get("/users/1").header("token", 1))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"e-1-0\""));
+        // without If-None-Match the version is not queried separately
+        Mockito.verify(userService, Mockito.never()).getUserETag(1L);
+    }
+
+    @Test
+    public void getUserById_matchingETag_notModified() throws Exception {
+        given(userService.getUserETag(1L)).willReturn("\"e-1-0\"");
+
+        mockMvc.perform(get("/users/1").header("token", 1).header(HttpHeaders.IF_NONE_MATCH, "\"e-1-0\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"e-1-0\""))
+                .andExpect(content().string(""));
+        Mockito.verify(userService, Mockito.never()).getUserWithId(Mockito.any());
+    }
+
+    @Test
+    public void getUserById_staleETag_returnsUser() throws Exception {
+        User user = new User();
+        user.setId(1L);
+        user.setUsername("testUsername");
+        user.setStatus(UserStatus.ONLINE);
+
+        given(userService.getUserETag(1L)).willReturn("\"e-1-1\"");
+        given(userService.getUserWithId(1L)).willReturn(user);
+        given(userService.getUserETag(user)).willReturn("\"e-1-1\"");
+
+        mockMvc.perform(get("/users/1").header("token", 1).header(HttpHeaders.IF_NONE_MATCH, "\"e-1-0\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"e-1-1\""))
+                .andExpect(jsonPath("$.username", is(user.getUsername())));
+    }
+
+    @Test
+    public void givenMatchingETag_whenGetUsers_thenNotModified() throws Exception {
+        given(userService.getUsersETag()).willReturn("\"e-3\"");
+
+        mockMvc.perform(get("/users").header("token", 1).header(HttpHeaders.IF_NONE_MATCH, "\"e-3\""))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+        Mockito.verify(userService, Mockito.never()).getUsers(Mockito.any(), Mockito.any(), Mockito.any());
+
+        mockMvc.perform(get("/users").header("token", 1).header(HttpHeaders.IF_NONE_MATCH, "\"e-2\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"e-3\""));
+    }
+
     @Test
     public void getUser_doesNotExist() throws Exception{
 
@@ -155,6 +448,24 @@ public class UserControllerTest {
                 .andExpect(status().isBadRequest());
     }
 
+    @Test
+    public void getUser_invalidToken_errorCode() throws Exception {
+        Mockito.when(userService.authenticateToken(Mockito.any())).thenThrow(UserError.TOKEN_INVALID.exception());
+
+        // when
+        MockHttpServletRequestBuilder getRequest = get("/users/1")
+                .header("token", "invalid")
+                .contentType(MediaType.APPLICATION_JSON);
+
+        // then
+        mockMvc.perform(getRequest)
+                .andExpect(status().isBadRequest())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.status", is(400)))
+                .andExpect(jsonPath("$.code", is("TOKEN_INVALID")))
+                .andExpect(jsonPath("$.message", is(UserError.TOKEN_INVALID.getMessage())));
+    }
+
 
     @Test
     public void loginUser_checkJsonReturned() throws Exception {
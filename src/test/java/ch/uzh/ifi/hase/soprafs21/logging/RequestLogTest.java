@@ -0,0 +1,126 @@
+package ch.uzh.ifi.hase.soprafs21.logging;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RequestLogTest {
+
+    private final ConcurrentLinkedQueue<String> lines = new ConcurrentLinkedQueue<>();
+
+    @Test
+    public void log_event_writtenAsKeyValueLine() throws InterruptedException {
+        RequestLog requestLog = new RequestLog(16, List.of(), lines::add);
+
+        requestLog.log("user.modified", "userId", 1L, "username", "new name", "renamed", true);
+        requestLog.destroy();
+
+        assertEquals(1, lines.size());
+        String line = lines.peek();
+        assertTrue(line.startsWith("time="));
+        assertTrue(line.contains(" event=user.modified userId=1 username=\"new name\" renamed=true"), line);
+        assertEquals(1, requestLog.getWrittenCount());
+    }
+
+    @Test
+    public void log_afterIdle_writerWokenUp() throws InterruptedException {
+        RequestLog requestLog = new RequestLog(16, List.of(), lines::add);
+        // the writer is parked on the empty buffer by now, only the event can wake it up
+        Thread.sleep(50);
+
+        requestLog.log("user.created", "userId", 1L);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (lines.isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(1, lines.size());
+        requestLog.destroy();
+    }
+
+    @Test
+    public void log_secrets_redacted() throws InterruptedException {
+        RequestLog requestLog = new RequestLog(16, List.of(), lines::add);
+
+        requestLog.log("token.check", "token", "secretToken", "result", "found");
+        requestLog.log("user.login.failed", "username", "name", "password", "secretPassword");
+        requestLog.destroy();
+
+        assertEquals(2, lines.size());
+        for (String line : lines) {
+            assertFalse(line.contains("secret"), line);
+            assertTrue(line.contains(RequestLog.REDACTED), line);
+        }
+    }
+
+    @Test
+    public void log_sampleRates_sampledEventsSkipped() throws InterruptedException {
+        RequestLog requestLog = new RequestLog(16, List.of("token.check=0", "user.login=1"), lines::add);
+
+        requestLog.log("token.check", "result", "found");
+        requestLog.log("user.login", "userId", 1L);
+        requestLog.log("user.created", "userId", 1L);
+        requestLog.destroy();
+
+        assertEquals(2, lines.size());
+        assertEquals(1, requestLog.getSampledOutCount());
+    }
+
+    @Test
+    public void log_bufferFull_eventsDroppedWithoutWaiting() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        // the writer is stuck on the first event, the buffer fills up behind it
+        RequestLog requestLog = new RequestLog(4, List.of(), line -> {
+            try {
+                release.await();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            lines.add(line);
+        });
+
+        for (int i = 0; i < 20; i++) {
+            requestLog.log("user.created", "userId", i);
+        }
+        release.countDown();
+        requestLog.destroy();
+
+        assertTrue(requestLog.getDroppedCount() >= 15, "dropped " + requestLog.getDroppedCount());
+        assertEquals(20, requestLog.getWrittenCount() + requestLog.getDroppedCount());
+        assertEquals(requestLog.getWrittenCount(), lines.size());
+    }
+
+    @Test
+    public void log_concurrentProducers_everyEventWrittenOrDropped() throws InterruptedException {
+        RequestLog requestLog = new RequestLog(64, List.of(), lines::add);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        for (int thread = 0; thread < 8; thread++) {
+            executor.execute(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    requestLog.log("token.check", "result", "found");
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        requestLog.destroy();
+
+        assertEquals(80_000, requestLog.getWrittenCount() + requestLog.getDroppedCount());
+        assertEquals(requestLog.getWrittenCount(), lines.size());
+    }
+
+    @Test
+    public void constructor_invalidSettings_throwsException() {
+        assertThrows(IllegalArgumentException.class, () -> new RequestLog(100, List.of(), lines::add));
+        assertThrows(IllegalArgumentException.class, () -> new RequestLog(16, List.of("token.check"), lines::add));
+    }
+}
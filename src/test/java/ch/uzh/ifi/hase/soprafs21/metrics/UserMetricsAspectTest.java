@@ -0,0 +1,76 @@
+package ch.uzh.ifi.hase.soprafs21.metrics;
+
+import ch.uzh.ifi.hase.soprafs21.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs21.service.UserService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UserMetricsAspectTest {
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private UserService userService;
+
+    private UserRepository userRepository;
+
+    @BeforeEach
+    public void setup() {
+        meterRegistry = new SimpleMeterRegistry();
+        UserMetricsAspect aspect = new UserMetricsAspect(meterRegistry);
+
+        AspectJProxyFactory serviceProxyFactory = new AspectJProxyFactory(Mockito.mock(UserService.class));
+        serviceProxyFactory.setProxyTargetClass(true);
+        serviceProxyFactory.addAspect(aspect);
+        userService = serviceProxyFactory.getProxy();
+
+        AspectJProxyFactory repositoryProxyFactory = new AspectJProxyFactory(Mockito.mock(UserRepository.class));
+        repositoryProxyFactory.addAspect(aspect);
+        userRepository = repositoryProxyFactory.getProxy();
+    }
+
+    @Test
+    public void serviceCall_timed() {
+        userService.authenticateToken("token");
+
+        assertEquals(1, meterRegistry.get(UserMetricsAspect.SERVICE_TIMER)
+                .tag("method", "authenticateToken").tag("exception", "none").timer().count());
+    }
+
+    @Test
+    public void repositoryCall_timed() {
+        userRepository.findByToken("token");
+        userRepository.findByToken("token");
+
+        assertEquals(2, meterRegistry.get(UserMetricsAspect.REPOSITORY_TIMER)
+                .tag("method", "findByToken").timer().count());
+    }
+
+    @Test
+    public void authFailure_counted() {
+        Mockito.when(userService.authenticateToken("token"))
+                .thenThrow(new ResponseStatusException(HttpStatus.BAD_REQUEST, "Token could not be authenticated"));
+
+        assertThrows(ResponseStatusException.class, () -> userService.authenticateToken("token"));
+
+        assertEquals(1, meterRegistry.get(UserMetricsAspect.AUTH_FAILURE_COUNTER).counter().count());
+        assertEquals(1, meterRegistry.get(UserMetricsAspect.SERVICE_TIMER)
+                .tag("exception", "ResponseStatusException").timer().count());
+    }
+
+    @Test
+    public void conflict_counted() {
+        Mockito.when(userService.createUser(Mockito.any()))
+                .thenThrow(new ResponseStatusException(HttpStatus.CONFLICT, "The username provided is not unique."));
+
+        assertThrows(ResponseStatusException.class, () -> userService.createUser(null));
+
+        assertEquals(1, meterRegistry.get(UserMetricsAspect.CONFLICT_COUNTER).tag("method", "createUser").counter().count());
+    }
+}
@@ -0,0 +1,45 @@
+package ch.uzh.ifi.hase.soprafs21.ratelimit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.http.HttpStatus;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * RateLimitFilterIntegrationTest
+ * Sends requests through the embedded Tomcat from a proxy address (localhost, like the Heroku router from its private
+ * network) and checks that the address buckets belong to the clients named in X-Forwarded-For, not to the proxy.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"management.server.port=0", "soprafs21.rate-limit.limits=GET /=1:1",
+                "soprafs21.rate-limit.address-factor=1"})
+public class RateLimitFilterIntegrationTest {
+
+    @LocalServerPort
+    private int port;
+
+    private final HttpClient httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+    @Test
+    public void forwardedClients_ownAddressBuckets() throws Exception {
+        assertEquals(HttpStatus.OK.value(), getRoot("203.0.113.1"));
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS.value(), getRoot("203.0.113.1"));
+
+        // another client behind the same proxy is not limited by the first one
+        assertEquals(HttpStatus.OK.value(), getRoot("203.0.113.2"));
+    }
+
+    private int getRoot(String forwardedFor) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/"))
+                .header("X-Forwarded-For", forwardedFor)
+                .GET().build();
+        return httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+}
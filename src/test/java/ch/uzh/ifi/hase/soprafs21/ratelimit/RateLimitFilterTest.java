@@ -0,0 +1,84 @@
+package ch.uzh.ifi.hase.soprafs21.ratelimit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RateLimitFilterTest {
+
+    private RateLimitFilter rateLimitFilter;
+
+    @BeforeEach
+    public void setup() {
+        rateLimitFilter = new RateLimitFilter(List.of("GET /users=1:2", "* /users/**=100:100"), 2, new RateLimiter(100, 60));
+    }
+
+    @Test
+    public void doFilter_overLimit_tooManyRequestsWithoutReachingTheController() throws Exception {
+        assertEquals(HttpStatus.OK.value(), getUsers("token", "10.0.0.1").getStatus());
+        assertEquals(HttpStatus.OK.value(), getUsers("token", "10.0.0.1").getStatus());
+
+        MockFilterChain chain = new MockFilterChain();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        rateLimitFilter.doFilter(request("GET", "/users", "token", "10.0.0.1"), response, chain);
+
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS.value(), response.getStatus());
+        assertEquals("1", response.getHeader(HttpHeaders.RETRY_AFTER));
+        assertNull(chain.getRequest());
+        // the other token of the same address is within its own limit and the address factor
+        assertEquals(HttpStatus.OK.value(), getUsers("other", "10.0.0.1").getStatus());
+    }
+
+    @Test
+    public void doFilter_newTokenPerRequest_limitedByAddress() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            assertEquals(HttpStatus.OK.value(), getUsers("token" + i, "10.0.0.1").getStatus());
+        }
+
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS.value(), getUsers("token4", "10.0.0.1").getStatus());
+        assertEquals(HttpStatus.OK.value(), getUsers("token4", "10.0.0.2").getStatus());
+    }
+
+    @Test
+    public void doFilter_rejectedForToken_addressPermitGivenBack() throws Exception {
+        getUsers("token", "10.0.0.1");
+        getUsers("token", "10.0.0.1");
+        for (int i = 0; i < 10; i++) {
+            assertEquals(HttpStatus.TOO_MANY_REQUESTS.value(), getUsers("token", "10.0.0.1").getStatus());
+        }
+
+        // the rejected requests did not use up the burst of the address
+        assertEquals(HttpStatus.OK.value(), getUsers("other", "10.0.0.1").getStatus());
+        assertEquals(HttpStatus.OK.value(), getUsers("other", "10.0.0.1").getStatus());
+    }
+
+    @Test
+    public void doFilter_firstMatchingRuleApplies() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            rateLimitFilter.doFilter(request("GET", "/users/1", "token", "10.0.0.1"), response, new MockFilterChain());
+            assertEquals(HttpStatus.OK.value(), response.getStatus());
+        }
+    }
+
+    private MockHttpServletResponse getUsers(String token, String remoteAddress) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        rateLimitFilter.doFilter(request("GET", "/users", token, remoteAddress), response, new MockFilterChain());
+        return response;
+    }
+
+    private static MockHttpServletRequest request(String method, String path, String token, String remoteAddress) {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, path);
+        request.addHeader("token", token);
+        request.setRemoteAddr(remoteAddress);
+        return request;
+    }
+}
@@ -0,0 +1,102 @@
+package ch.uzh.ifi.hase.soprafs21.ratelimit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RateLimiterTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    // one permit per second, up to two at once
+    private final RateLimiter.Limit limit = new RateLimiter.Limit(1, 2);
+
+    private AtomicLong now;
+
+    private RateLimiter rateLimiter;
+
+    @BeforeEach
+    public void setup() {
+        now = new AtomicLong();
+        rateLimiter = new RateLimiter(2, 10 * SECOND, now::get);
+    }
+
+    @Test
+    public void acquire_withinBurst_permitted() {
+        assertEquals(0, rateLimiter.acquire("client", limit));
+        assertEquals(0, rateLimiter.acquire("client", limit));
+        assertEquals(0, rateLimiter.getRejectionCount());
+    }
+
+    @Test
+    public void acquire_overLimit_waitUntilNextPermit() {
+        rateLimiter.acquire("client", limit);
+        rateLimiter.acquire("client", limit);
+
+        assertEquals(SECOND, rateLimiter.acquire("client", limit));
+        assertEquals(1, rateLimiter.getRejectionCount());
+        // other clients have their own bucket
+        assertEquals(0, rateLimiter.acquire("other", limit));
+
+        now.addAndGet(SECOND);
+        assertEquals(0, rateLimiter.acquire("client", limit));
+    }
+
+    @Test
+    public void evictIdle_fullBucketsRemoved() {
+        rateLimiter.acquire("idle", limit);
+        now.addAndGet(5 * SECOND);
+        rateLimiter.acquire("active", limit);
+        now.addAndGet(6 * SECOND);
+
+        assertEquals(1, rateLimiter.evictIdle());
+        assertEquals(1, rateLimiter.size());
+    }
+
+    @Test
+    public void acquire_maxBucketsReached_leastRecentlyUsedEvicted() {
+        rateLimiter.acquire("first", limit);
+        now.addAndGet(SECOND);
+        rateLimiter.acquire("second", limit);
+
+        assertEquals(0, rateLimiter.acquire("third", limit));
+        assertEquals(2, rateLimiter.size());
+        assertEquals(0, rateLimiter.getRejectionCount());
+
+        // the bucket of the second client was kept
+        rateLimiter.acquire("second", limit);
+        assertTrue(rateLimiter.acquire("second", limit) > 0);
+    }
+
+    @Test
+    public void acquire_maxBucketsReached_batchEvictedByOneScan() {
+        RateLimiter largeRateLimiter = new RateLimiter(32, 10 * SECOND, now::get);
+        for (int i = 0; i < 32; i++) {
+            largeRateLimiter.acquire("client" + i, limit);
+            now.addAndGet(1);
+        }
+
+        // a sixteenth of the buckets is evicted, the next new key finds room without another scan
+        largeRateLimiter.acquire("new", limit);
+        assertEquals(31, largeRateLimiter.size());
+        largeRateLimiter.acquire("newer", limit);
+        assertEquals(32, largeRateLimiter.size());
+
+        // only the two least recently used buckets were evicted, the bucket of the third client was kept
+        largeRateLimiter.acquire("client2", limit);
+        assertTrue(largeRateLimiter.acquire("client2", limit) > 0);
+    }
+
+    @Test
+    public void release_permitGivenBack() {
+        rateLimiter.acquire("client", limit);
+        rateLimiter.acquire("client", limit);
+        rateLimiter.release("client");
+
+        assertEquals(0, rateLimiter.acquire("client", limit));
+    }
+}
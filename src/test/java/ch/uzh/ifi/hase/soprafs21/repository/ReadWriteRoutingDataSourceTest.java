@@ -0,0 +1,77 @@
+package ch.uzh.ifi.hase.soprafs21.repository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Two separate in-memory H2 databases stand in for the primary and the replica, each knows its own name.
+ */
+public class ReadWriteRoutingDataSourceTest {
+
+    private JdbcTemplate jdbcTemplate;
+
+    private TransactionTemplate readWrite;
+
+    private TransactionTemplate readOnly;
+
+    private static DataSource database(String name) {
+        DataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:" + name + "-" + System.nanoTime() + ";DB_CLOSE_DELAY=-1");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE instance (name VARCHAR(16))");
+        jdbcTemplate.update("INSERT INTO instance VALUES (?)", name);
+        return dataSource;
+    }
+
+    @BeforeEach
+    public void setup() {
+        DataSource dataSource = new LazyConnectionDataSourceProxy(
+                new ReadWriteRoutingDataSource(database("primary"), database("replica")));
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        readWrite = new TransactionTemplate(transactionManager);
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+    }
+
+    private String instance() {
+        return jdbcTemplate.queryForObject("SELECT name FROM instance", String.class);
+    }
+
+    @Test
+    public void readOnlyTransaction_routedToReplica() {
+        assertEquals("replica", readOnly.execute(transaction -> instance()));
+    }
+
+    @Test
+    public void readWriteTransaction_routedToPrimary() {
+        assertEquals("primary", readWrite.execute(transaction -> instance()));
+    }
+
+    @Test
+    public void noTransaction_routedToPrimary() {
+        assertEquals("primary", instance());
+    }
+
+    @Test
+    public void newTransactionInsideReadOnlyTransaction_routedToPrimary() {
+        TransactionTemplate requiresNew = new TransactionTemplate(readWrite.getTransactionManager());
+        requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        String inner = readOnly.execute(transaction -> {
+            instance();
+            return requiresNew.execute(newTransaction -> instance());
+        });
+
+        assertEquals("primary", inner);
+    }
+}
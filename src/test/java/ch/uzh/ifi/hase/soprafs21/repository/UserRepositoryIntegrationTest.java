@@ -1,14 +1,22 @@
 package ch.uzh.ifi.hase.soprafs21.repository;
 
+import ch.uzh.ifi.hase.soprafs21.constant.UserField;
 import ch.uzh.ifi.hase.soprafs21.constant.UserStatus;
 import ch.uzh.ifi.hase.soprafs21.entity.User;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
+
+import java.time.LocalDate;
+import java.util.EnumSet;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 
 @DataJpaTest
 public class UserRepositoryIntegrationTest {
@@ -39,4 +47,59 @@ public class UserRepositoryIntegrationTest {
         assertEquals(found.getToken(), user.getToken());
         assertEquals(found.getStatus(), user.getStatus());
     }
+
+    @Test
+    public void findByIdGreaterThan_returnsNextPageOnly() {
+        // given
+        User first = persistUser("first", "token1", UserStatus.ONLINE);
+        User second = persistUser("second", "token2", UserStatus.OFFLINE);
+        User third = persistUser("third", "token3", UserStatus.ONLINE);
+
+        // when
+        List<User> page = userRepository.findByIdGreaterThanOrderByIdAsc(first.getId(), PageRequest.of(0, 1));
+        List<User> onlinePage = userRepository.findByStatusAndIdGreaterThanOrderByIdAsc(UserStatus.ONLINE, first.getId(), PageRequest.of(0, 10));
+
+        // then
+        assertEquals(1, page.size());
+        assertEquals(second.getId(), page.get(0).getId());
+        assertEquals(1, onlinePage.size());
+        assertEquals(third.getId(), onlinePage.get(0).getId());
+    }
+
+    @Test
+    public void findProjected_onlyRequestedFieldsNotManaged() {
+        // given
+        User first = persistUser("first", "token1", UserStatus.ONLINE);
+        User second = persistUser("second", "token2", UserStatus.OFFLINE);
+        entityManager.clear();
+
+        // when
+        List<User> page = userRepository.findProjectedByIdGreaterThan(EnumSet.of(UserField.USERNAME), UserStatus.OFFLINE, 0L, 10);
+        User found = userRepository.findProjectedById(EnumSet.of(UserField.STATUS, UserField.TOKEN), first.getId());
+
+        // then
+        assertEquals(1, page.size());
+        assertEquals(second.getId(), page.get(0).getId());
+        assertEquals("second", page.get(0).getUsername());
+        assertNull(page.get(0).getToken());
+        assertEquals(UserStatus.ONLINE, found.getStatus());
+        assertEquals("token1", found.getToken());
+        assertNull(found.getUsername());
+        assertNotNull(found.getVersion());
+        assertFalse(entityManager.getEntityManager().contains(found));
+        assertNull(userRepository.findProjectedById(EnumSet.of(UserField.ID), second.getId() + 1000));
+    }
+
+    private User persistUser(String username, String token, UserStatus status) {
+        User user = new User();
+        user.setUsername(username);
+        user.setPassword("password");
+        user.setToken(token);
+        user.setStatus(status);
+        user.setCreationDate(LocalDate.now());
+
+        entityManager.persist(user);
+        entityManager.flush();
+        return user;
+    }
 }
@@ -0,0 +1,62 @@
+package ch.uzh.ifi.hase.soprafs21.rest.mapper;
+
+import ch.uzh.ifi.hase.soprafs21.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs21.entity.User;
+import ch.uzh.ifi.hase.soprafs21.rest.dto.UserGetDTO;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * UserJsonWriterTest
+ * Tests if the users are written exactly like their UserGetDTOs are serialized by Jackson.
+ */
+public class UserJsonWriterTest {
+
+    private ObjectMapper objectMapper;
+
+    @BeforeEach
+    public void setup() {
+        objectMapper = Jackson2ObjectMapperBuilder.json()
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .filters(new SimpleFilterProvider().addFilter(UserGetDTO.FIELDS_FILTER, SimpleBeanPropertyFilter.serializeAll()))
+                .build();
+    }
+
+    @Test
+    public void users_sameAsUserGetDTOs() throws Exception {
+        User user = new User();
+        user.setId(1L);
+        user.setUsername("firstname@lastname");
+        user.setPassword("pass\"word");
+        user.setToken("1");
+        user.setStatus(UserStatus.ONLINE);
+        user.setCreationDate(LocalDate.of(2021, 3, 1));
+        user.setBirthdate(LocalDate.of(1990, 12, 31));
+
+        // a user with only some fields, like the users of a projection
+        User emptyUser = new User();
+        emptyUser.setId(2L);
+
+        List<User> users = Arrays.asList(user, emptyUser);
+        List<UserGetDTO> userGetDTOs = new ArrayList<>();
+        for (User u : users) {
+            userGetDTOs.add(DTOMapper.INSTANCE.convertEntityToUserGetDTO(u));
+        }
+
+        assertEquals(objectMapper.writeValueAsString(userGetDTOs), objectMapper.writeValueAsString(UserJsonWriter.users(users)));
+        // the second time the status and the dates come from the cache
+        assertEquals(objectMapper.writeValueAsString(userGetDTOs), objectMapper.writeValueAsString(UserJsonWriter.users(users)));
+    }
+}
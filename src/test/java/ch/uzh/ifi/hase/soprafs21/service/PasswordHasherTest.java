@@ -0,0 +1,64 @@
+package ch.uzh.ifi.hase.soprafs21.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PasswordHasherTest {
+
+    private PasswordHasher passwordHasher;
+
+    @BeforeEach
+    public void setup() {
+        // lowest BCrypt cost to keep the test fast
+        passwordHasher = new PasswordHasher(4, 2, 10);
+    }
+
+    @AfterEach
+    public void teardown() {
+        passwordHasher.destroy();
+    }
+
+    @Test
+    public void hash_saltedAndVerifiable() {
+        String firstHash = passwordHasher.hash("password");
+        String secondHash = passwordHasher.hash("password");
+
+        assertNotEquals("password", firstHash);
+        assertNotEquals(firstHash, secondHash);
+        assertTrue(passwordHasher.matches("password", firstHash));
+        assertFalse(passwordHasher.matches("wrongPassword", firstHash));
+        assertEquals(2, passwordHasher.getVerificationCount());
+    }
+
+    @Test
+    public void matches_withoutHash_verifiedButNoMatch() {
+        assertFalse(passwordHasher.matches("password", null));
+        assertEquals(1, passwordHasher.getVerificationCount());
+    }
+
+    @Test
+    public void hashAll_keepsOrder() {
+        List<String> hashes = passwordHasher.hashAll(Arrays.asList("first", "second", null, "third"));
+
+        assertEquals(4, hashes.size());
+        assertTrue(passwordHasher.matches("first", hashes.get(0)));
+        assertTrue(passwordHasher.matches("second", hashes.get(1)));
+        assertNull(hashes.get(2));
+        assertTrue(passwordHasher.matches("third", hashes.get(3)));
+    }
+
+    @Test
+    public void matchesAsync_completesOnPool() {
+        String hash = passwordHasher.hashAsync("password").join();
+
+        assertTrue(passwordHasher.matchesAsync("password", hash).join());
+        assertFalse(passwordHasher.matchesAsync("wrongPassword", hash).join());
+        assertEquals(2, passwordHasher.getVerificationCount());
+    }
+}
@@ -0,0 +1,148 @@
+package ch.uzh.ifi.hase.soprafs21.service;
+
+import ch.uzh.ifi.hase.soprafs21.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs21.entity.User;
+import ch.uzh.ifi.hase.soprafs21.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PresenceRegistryTest {
+
+    private UserRepository userRepository;
+
+    private UserChangeTracker changeTracker;
+
+    private PresenceRegistry presenceRegistry;
+
+    @BeforeEach
+    public void setup() {
+        userRepository = Mockito.mock(UserRepository.class);
+        changeTracker = new UserChangeTracker();
+        presenceRegistry = new PresenceRegistry(userRepository, Mockito.mock(PlatformTransactionManager.class),
+                changeTracker, "reset");
+    }
+
+    @Test
+    public void setStatus_coalescedIntoOneUpdatePerStatus() {
+        presenceRegistry.setStatus(1L, UserStatus.ONLINE);
+        presenceRegistry.setStatus(2L, UserStatus.ONLINE);
+        presenceRegistry.setStatus(2L, UserStatus.OFFLINE);
+        presenceRegistry.setStatus(3L, UserStatus.ONLINE);
+
+        assertEquals(3, presenceRegistry.getPendingCount());
+        assertEquals(3, presenceRegistry.flush());
+
+        // the pending changes are kept in a hash map, so the ids of one update come in no particular order
+        ArgumentCaptor<Collection<Long>> onlineIds = ArgumentCaptor.forClass(Collection.class);
+        Mockito.verify(userRepository, Mockito.times(1)).updateStatus(Mockito.eq(UserStatus.ONLINE), onlineIds.capture());
+        assertEquals(Set.of(1L, 3L), new HashSet<>(onlineIds.getValue()));
+        Mockito.verify(userRepository, Mockito.times(1)).updateStatus(UserStatus.OFFLINE, List.of(2L));
+        assertEquals(0, presenceRegistry.getPendingCount());
+        assertEquals(0, presenceRegistry.flush());
+        assertEquals(3, presenceRegistry.getFlushedChangeCount());
+    }
+
+    @Test
+    public void setStatus_sameStatus_noChange() {
+        presenceRegistry.setStatus(1L, UserStatus.ONLINE);
+        presenceRegistry.flush();
+        long generation = changeTracker.getGeneration();
+
+        presenceRegistry.setStatus(1L, UserStatus.ONLINE);
+
+        assertEquals(0, presenceRegistry.getPendingCount());
+        assertEquals(generation, changeTracker.getGeneration());
+    }
+
+    @Test
+    public void setStatus_concurrentLoginsAndLogouts_pendingChangeIsRegistryStatus() throws Exception {
+        presenceRegistry.setStatus(1L, UserStatus.OFFLINE);
+        presenceRegistry.flush();
+        Mockito.reset(userRepository);
+
+        Thread login = new Thread(() -> {
+            for (int i = 0; i < 10000; i++) {
+                presenceRegistry.setStatus(1L, UserStatus.ONLINE);
+            }
+        });
+        Thread logout = new Thread(() -> {
+            for (int i = 0; i < 10000; i++) {
+                presenceRegistry.setStatus(1L, UserStatus.OFFLINE);
+            }
+        });
+        login.start();
+        logout.start();
+        login.join();
+        logout.join();
+
+        // whichever status won, the database gets the same one as the registry
+        UserStatus status = presenceRegistry.getStatus(1L);
+        presenceRegistry.flush();
+        Mockito.verify(userRepository, Mockito.never()).updateStatus(Mockito.eq(status == UserStatus.ONLINE
+                ? UserStatus.OFFLINE : UserStatus.ONLINE), Mockito.any());
+    }
+
+    @Test
+    public void flush_failed_changesRetried() {
+        presenceRegistry.setStatus(1L, UserStatus.ONLINE);
+        Mockito.when(userRepository.updateStatus(Mockito.any(), Mockito.any()))
+                .thenThrow(new QueryTimeoutException("timeout"));
+
+        assertEquals(0, presenceRegistry.flush());
+        assertEquals(1, presenceRegistry.getPendingCount());
+
+        Mockito.reset(userRepository);
+        assertEquals(1, presenceRegistry.flush());
+        Mockito.verify(userRepository, Mockito.times(1)).updateStatus(UserStatus.ONLINE, List.of(1L));
+    }
+
+    @Test
+    public void applyTo_statusOfRegistry() {
+        User user = new User();
+        user.setId(1L);
+        user.setStatus(UserStatus.OFFLINE);
+
+        presenceRegistry.applyTo(user);
+        assertEquals(UserStatus.OFFLINE, user.getStatus());
+
+        presenceRegistry.setStatus(1L, UserStatus.ONLINE);
+        presenceRegistry.applyTo(user);
+        assertEquals(UserStatus.ONLINE, user.getStatus());
+    }
+
+    @Test
+    public void rebuild_reset_allUsersOffline() {
+        presenceRegistry.setStatus(1L, UserStatus.ONLINE);
+
+        presenceRegistry.rebuild();
+
+        assertNull(presenceRegistry.getStatus(1L));
+        assertEquals(0, presenceRegistry.getPendingCount());
+        Mockito.verify(userRepository, Mockito.times(1)).updateAllStatuses(UserStatus.OFFLINE);
+    }
+
+    @Test
+    public void rebuild_restore_onlineUsersFromDatabase() {
+        presenceRegistry = new PresenceRegistry(userRepository, Mockito.mock(PlatformTransactionManager.class),
+                changeTracker, "restore");
+        Mockito.when(userRepository.findIdsByStatus(UserStatus.ONLINE)).thenReturn(List.of(4L, 5L));
+
+        presenceRegistry.rebuild();
+
+        assertEquals(UserStatus.ONLINE, presenceRegistry.getStatus(4L));
+        assertEquals(UserStatus.ONLINE, presenceRegistry.getStatus(5L));
+        assertNull(presenceRegistry.getStatus(6L));
+        Mockito.verify(userRepository, Mockito.never()).updateAllStatuses(Mockito.any());
+    }
+}
@@ -0,0 +1,68 @@
+package ch.uzh.ifi.hase.soprafs21.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TokenCacheTest {
+
+    private AtomicLong now;
+
+    private TokenCache tokenCache;
+
+    @BeforeEach
+    public void setup() {
+        now = new AtomicLong();
+        tokenCache = new TokenCache(2, 100L, now::get);
+    }
+
+    @Test
+    public void getUserId_cachedToken_hit() {
+        tokenCache.put("token", 1L);
+
+        assertEquals(1L, tokenCache.getUserId("token"));
+        assertEquals(1, tokenCache.getHitCount());
+        assertEquals(0, tokenCache.getMissCount());
+    }
+
+    @Test
+    public void getUserId_unknownToken_miss() {
+        assertNull(tokenCache.getUserId("token"));
+        assertEquals(0, tokenCache.getHitCount());
+        assertEquals(1, tokenCache.getMissCount());
+    }
+
+    @Test
+    public void getUserId_expiredToken_evicted() {
+        tokenCache.put("token", 1L);
+        now.set(100L);
+
+        assertNull(tokenCache.getUserId("token"));
+        assertEquals(1, tokenCache.getEvictionCount());
+        assertEquals(0, tokenCache.size());
+    }
+
+    @Test
+    public void put_cacheFull_oldestEvicted() {
+        tokenCache.put("first", 1L);
+        tokenCache.put("second", 2L);
+        tokenCache.put("third", 3L);
+
+        assertNull(tokenCache.getUserId("first"));
+        assertEquals(2L, tokenCache.getUserId("second"));
+        assertEquals(3L, tokenCache.getUserId("third"));
+        assertEquals(1, tokenCache.getEvictionCount());
+    }
+
+    @Test
+    public void invalidate_cachedToken_removed() {
+        tokenCache.put("token", 1L);
+        tokenCache.invalidate("token");
+
+        assertNull(tokenCache.getUserId("token"));
+        assertEquals(0, tokenCache.getEvictionCount());
+    }
+}
@@ -0,0 +1,133 @@
+package ch.uzh.ifi.hase.soprafs21.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TokenIssuerTest {
+
+    private static final String OLD_KEY = "old:" + Base64.getEncoder().encodeToString(new byte[32]);
+    private static final String NEW_KEY = "new:" + Base64.getEncoder().encodeToString("0123456789abcdef0123456789abcdef".getBytes());
+
+    private AtomicLong now;
+
+    private TokenIssuer tokenIssuer;
+
+    @BeforeEach
+    public void setup() {
+        now = new AtomicLong(1_000_000L);
+        tokenIssuer = new TokenIssuer(TokenIssuer.SIGNED, List.of(OLD_KEY, NEW_KEY), "new", 100L, now::get);
+    }
+
+    @Test
+    public void verify_issuedToken_userId() {
+        String token = tokenIssuer.issue(42L);
+
+        assertTrue(token.startsWith("new."));
+        assertEquals(42L, tokenIssuer.verify(token));
+        assertNotEquals(token, tokenIssuer.issue(42L));
+    }
+
+    @Test
+    public void verify_tamperedToken_rejected() {
+        String token = tokenIssuer.issue(42L);
+        String otherUser = tokenIssuer.issue(43L);
+        // the payload of another user with the signature of this one
+        String forged = otherUser.substring(0, otherUser.lastIndexOf('.')) + token.substring(token.lastIndexOf('.'));
+
+        assertNull(tokenIssuer.verify(forged));
+        assertNull(tokenIssuer.verify("1"));
+        assertNull(tokenIssuer.verify("new.not-base64!.x"));
+        assertNull(tokenIssuer.verify(null));
+        assertEquals(4, tokenIssuer.getRejectionCount());
+    }
+
+    @Test
+    public void verify_expiredToken_rejected() {
+        String token = tokenIssuer.issue(42L);
+
+        now.addAndGet(100L);
+
+        assertNull(tokenIssuer.verify(token));
+    }
+
+    @Test
+    public void verify_rotatedKeys_oldTokensValidUntilKeyRemoved() {
+        TokenIssuer before = new TokenIssuer(TokenIssuer.SIGNED, List.of(OLD_KEY), "", 100L, now::get);
+        String oldToken = before.issue(42L);
+        TokenIssuer withoutOldKey = new TokenIssuer(TokenIssuer.SIGNED, List.of(NEW_KEY), "", 100L, now::get);
+
+        assertEquals(42L, tokenIssuer.verify(oldToken));
+        assertNull(withoutOldKey.verify(oldToken));
+        assertEquals(42L, withoutOldKey.verify(tokenIssuer.issue(42L)));
+    }
+
+    @Test
+    public void revoke_earlierTokensRejected_laterTokensValid() {
+        String token = tokenIssuer.issue(42L);
+        String otherUser = tokenIssuer.issue(43L);
+
+        tokenIssuer.revoke(42L);
+        // in the same millisecond
+        String newToken = tokenIssuer.issue(42L);
+
+        assertNull(tokenIssuer.verify(token));
+        assertEquals(43L, tokenIssuer.verify(otherUser));
+        assertEquals(42L, tokenIssuer.verify(newToken));
+    }
+
+    @Test
+    public void evictExpiredRevocations_tokensExpired_removed() {
+        tokenIssuer.revoke(42L);
+        now.addAndGet(50L);
+        tokenIssuer.revoke(43L);
+        now.addAndGet(50L);
+
+        assertEquals(1, tokenIssuer.evictExpiredRevocations());
+        assertEquals(1, tokenIssuer.getRevocationCount());
+    }
+
+    @Test
+    public void verify_concurrentlyIssuedTokens_userIds() throws Exception {
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<Long>> verifiedUserIds = new ArrayList<>();
+            for (long userId = 0; userId < 1000; userId++) {
+                long issuedUserId = userId;
+                verifiedUserIds.add(executor.submit(() -> tokenIssuer.verify(tokenIssuer.issue(issuedUserId))));
+            }
+            for (int userId = 0; userId < verifiedUserIds.size(); userId++) {
+                assertEquals((long) userId, verifiedUserIds.get(userId).get());
+            }
+        }
+    }
+
+    @Test
+    public void randomToken_uuid() {
+        TokenIssuer random = new TokenIssuer(TokenIssuer.RANDOM, List.of(), "", 100L, now::get);
+
+        UUID token = UUID.fromString(random.randomToken());
+
+        assertEquals(4, token.version());
+        assertEquals(2, token.variant());
+        assertFalse(random.isSigned());
+        assertThrows(IllegalStateException.class, () -> random.issue(42L));
+    }
+
+    @Test
+    public void constructor_unknownActiveKey_throwsException() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new TokenIssuer(TokenIssuer.SIGNED, List.of(OLD_KEY, NEW_KEY), "other", 100L, now::get));
+        assertThrows(IllegalArgumentException.class,
+                () -> new TokenIssuer(TokenIssuer.SIGNED, List.of("short:" + Base64.getEncoder().encodeToString(new byte[8])), "", 100L, now::get));
+    }
+}
@@ -0,0 +1,69 @@
+package ch.uzh.ifi.hase.soprafs21.service;
+
+import ch.uzh.ifi.hase.soprafs21.constant.UserStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UserChangeTrackerTest {
+
+    private final UserChangeTracker changeTracker = new UserChangeTracker();
+
+    @AfterEach
+    public void teardown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    public void userChanged_withoutTransaction_newETag() {
+        String eTag = changeTracker.getUsersETag();
+
+        changeTracker.userChanged();
+
+        assertEquals(1, changeTracker.getGeneration());
+        assertNotEquals(eTag, changeTracker.getUsersETag());
+    }
+
+    @Test
+    public void userChanged_inTransaction_incrementedOnceAfterCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+
+        changeTracker.userChanged();
+        changeTracker.userChanged();
+        assertEquals(0, changeTracker.getGeneration());
+
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCommit();
+            synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+        }
+        assertEquals(1, changeTracker.getGeneration());
+        assertFalse(TransactionSynchronizationManager.hasResource(changeTracker));
+    }
+
+    @Test
+    public void userChanged_rolledBack_sameGeneration() {
+        TransactionSynchronizationManager.initSynchronization();
+
+        changeTracker.userChanged();
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+        }
+
+        assertEquals(0, changeTracker.getGeneration());
+    }
+
+    @Test
+    public void getUserETag_strongAndVersioned() {
+        String eTag = changeTracker.getUserETag(1L, 0L, null);
+
+        assertTrue(eTag.startsWith("\"") && eTag.endsWith("\""));
+        assertNotEquals(eTag, changeTracker.getUserETag(1L, 1L, null));
+        assertNotEquals(eTag, changeTracker.getUserETag(2L, 0L, null));
+        assertNotEquals(eTag, changeTracker.getUserETag(1L, 0L, UserStatus.ONLINE));
+    }
+}
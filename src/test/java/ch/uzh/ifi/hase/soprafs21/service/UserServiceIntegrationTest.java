@@ -3,6 +3,9 @@ package ch.uzh.ifi.hase.soprafs21.service;
 import ch.uzh.ifi.hase.soprafs21.constant.UserStatus;
 import ch.uzh.ifi.hase.soprafs21.entity.User;
 import ch.uzh.ifi.hase.soprafs21.repository.UserRepository;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -11,6 +14,11 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.web.WebAppConfiguration;
 import org.springframework.web.server.ResponseStatusException;
 
+import javax.persistence.EntityManagerFactory;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -29,6 +37,12 @@ public class UserServiceIntegrationTest {
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private PresenceRegistry presenceRegistry;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
     @BeforeEach
     public void setup() {
         userRepository.deleteAll();
@@ -70,4 +84,192 @@ public class UserServiceIntegrationTest {
         // check that an error is thrown
         assertThrows(ResponseStatusException.class, () -> userService.createUser(testUser2));
     }
+
+    @Test
+    public void createUsers_bulk_onlyNewUsernamesCreated() {
+        // given
+        List<User> newUsers = new ArrayList<>();
+        for (String username : new String[]{"first", "second", "first"}) {
+            User user = new User();
+            user.setUsername(username);
+            user.setPassword("password");
+            newUsers.add(user);
+        }
+
+        // when
+        List<User> createdUsers = userService.createUsers(newUsers);
+
+        // then
+        assertNotNull(createdUsers.get(0).getId());
+        assertNotNull(createdUsers.get(1).getId());
+        assertNull(createdUsers.get(2));
+        assertEquals(2, userRepository.count());
+    }
+
+    @Test
+    public void exportUsers_allUsersInIdOrder() {
+        // given
+        for (String username : new String[]{"first", "second", "third"}) {
+            User user = new User();
+            user.setUsername(username);
+            user.setPassword("password");
+            user.setToken(username + "Token");
+            user.setStatus(UserStatus.OFFLINE);
+            user.setCreationDate(LocalDate.now());
+            userRepository.saveAndFlush(user);
+        }
+
+        // when
+        List<String> exported = new ArrayList<>();
+        userService.exportUsers(user -> exported.add(user.getUsername()));
+
+        // then
+        assertEquals(List.of("first", "second", "third"), exported);
+    }
+
+    @Test
+    public void modifyUser_newVersionAndUsersETag() {
+        // given
+        User user = new User();
+        user.setUsername("testUsername");
+        user.setPassword("password");
+        User createdUser = userService.createUser(user);
+        String userETag = userService.getUserETag(createdUser.getId());
+        String usersETag = userService.getUsersETag();
+
+        // when
+        User userInput = new User();
+        userInput.setUsername("newUsername");
+        userService.modifyUser(createdUser.getId(), userInput);
+
+        // then
+        assertNotEquals(userETag, userService.getUserETag(createdUser.getId()));
+        assertEquals(userService.getUserETag(createdUser.getId()),
+                userService.getUserETag(userService.getUserWithId(createdUser.getId())));
+        assertNotEquals(usersETag, userService.getUsersETag());
+        assertNull(userService.getUserETag(createdUser.getId() + 1000));
+    }
+
+    @Test
+    public void checkIfCredentialsExist_statusWrittenByFlush() {
+        // given
+        User user = new User();
+        user.setUsername("testUsername");
+        user.setPassword("password");
+        User createdUser = userService.createUser(user);
+        Long version = userRepository.findVersionById(createdUser.getId());
+
+        // when
+        User userInput = new User();
+        userInput.setUsername("testUsername");
+        userInput.setPassword("password");
+        userService.checkIfCredentialsExist(userInput);
+
+        // then
+        assertEquals(UserStatus.ONLINE, userService.getUserWithId(createdUser.getId()).getStatus());
+        presenceRegistry.flush();
+        User storedUser = userRepository.findById(createdUser.getId()).orElseThrow();
+        assertEquals(UserStatus.ONLINE, storedUser.getStatus());
+        assertEquals(version, storedUser.getVersion());
+    }
+
+    @Test
+    public void getUserWithId_repeatedLookup_fromSecondLevelCache() {
+        // given
+        User user = new User();
+        user.setUsername("testUsername");
+        user.setPassword("password");
+        User createdUser = userService.createUser(user);
+        CacheRegionStatistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics()
+                .getCacheRegionStatistics(User.CACHE_REGION);
+        long hits = statistics.getHitCount();
+
+        // when
+        userService.getUserWithId(createdUser.getId());
+        userService.getUserWithId(createdUser.getId());
+
+        // then
+        assertTrue(statistics.getHitCount() >= hits + 1);
+    }
+
+    @Test
+    public void modifyUser_cachedLookupsInvalidated() {
+        // given
+        User user = new User();
+        user.setUsername("testUsername");
+        user.setPassword("password");
+        User createdUser = userService.createUser(user);
+        assertNotNull(userRepository.findByUsername("testUsername"));
+        assertNotNull(userRepository.findByToken(createdUser.getToken()));
+        userService.getUserWithId(createdUser.getId());
+
+        // when
+        User userInput = new User();
+        userInput.setUsername("newUsername");
+        userService.modifyUser(createdUser.getId(), userInput);
+
+        // then
+        assertNull(userRepository.findByUsername("testUsername"));
+        assertEquals(createdUser.getId(), userRepository.findByUsername("newUsername").getId());
+        assertEquals("newUsername", userRepository.findByToken(createdUser.getToken()).getUsername());
+        assertEquals("newUsername", userService.getUserWithId(createdUser.getId()).getUsername());
+    }
+
+    @Test
+    public void logOut_cachedUserInvalidatedByFlush() {
+        // given
+        User user = new User();
+        user.setUsername("testUsername");
+        user.setPassword("password");
+        User createdUser = userService.createUser(user);
+        User userInput = new User();
+        userInput.setUsername("testUsername");
+        userInput.setPassword("password");
+        userService.checkIfCredentialsExist(userInput);
+        presenceRegistry.flush();
+        assertEquals(UserStatus.ONLINE, userRepository.findById(createdUser.getId()).orElseThrow().getStatus());
+
+        // when
+        userService.logOut(createdUser.getId());
+        presenceRegistry.flush();
+
+        // then
+        assertEquals(UserStatus.OFFLINE, userRepository.findById(createdUser.getId()).orElseThrow().getStatus());
+    }
+
+    @Test
+    public void presenceFlush_cachedLookupsOfOtherUsersKept() {
+        // given
+        User user = new User();
+        user.setUsername("testUsername");
+        user.setPassword("password");
+        User createdUser = userService.createUser(user);
+        User otherUser = new User();
+        otherUser.setUsername("otherUsername");
+        otherUser.setPassword("password");
+        User createdOtherUser = userService.createUser(otherUser);
+        userRepository.findByUsername("otherUsername");
+        userRepository.findByToken(createdOtherUser.getToken());
+        userService.getUserWithId(createdOtherUser.getId());
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        long lookupHits = statistics.getQueryRegionStatistics(User.LOOKUP_CACHE_REGION).getHitCount();
+        long userHits = statistics.getCacheRegionStatistics(User.CACHE_REGION).getHitCount();
+
+        // when
+        User userInput = new User();
+        userInput.setUsername("testUsername");
+        userInput.setPassword("password");
+        userService.checkIfCredentialsExist(userInput);
+        presenceRegistry.flush();
+
+        // then
+        assertEquals(createdOtherUser.getId(), userRepository.findByUsername("otherUsername").getId());
+        assertEquals(createdOtherUser.getId(), userRepository.findByToken(createdOtherUser.getToken()).getId());
+        userService.getUserWithId(createdOtherUser.getId());
+        assertEquals(lookupHits + 2, statistics.getQueryRegionStatistics(User.LOOKUP_CACHE_REGION).getHitCount());
+        assertTrue(statistics.getCacheRegionStatistics(User.CACHE_REGION).getHitCount() >= userHits + 3);
+        // the flushed user is read from the database again
+        assertEquals(UserStatus.ONLINE, userRepository.findById(createdUser.getId()).orElseThrow().getStatus());
+    }
 }
@@ -1,16 +1,33 @@
 package ch.uzh.ifi.hase.soprafs21.service;
 
+import ch.uzh.ifi.hase.soprafs21.constant.UserField;
 import ch.uzh.ifi.hase.soprafs21.constant.UserStatus;
 import ch.uzh.ifi.hase.soprafs21.entity.User;
+import ch.uzh.ifi.hase.soprafs21.exceptions.UserError;
+import ch.uzh.ifi.hase.soprafs21.logging.RequestLog;
 import ch.uzh.ifi.hase.soprafs21.repository.UserRepository;
+import org.hibernate.exception.ConstraintViolationException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 public class UserServiceTest {
@@ -18,6 +35,28 @@ public class UserServiceTest {
     @Mock
     private UserRepository userRepository;
 
+    @Spy
+    private TokenCache tokenCache = new TokenCache(100, 300);
+
+    @Mock
+    private PasswordHasher passwordHasher;
+
+    @Mock
+    private PresenceRegistry presenceRegistry;
+
+    @Spy
+    private UsernameFilter usernameFilter = new UsernameFilter(100, 0.01);
+
+    @Spy
+    private TokenIssuer tokenIssuer = new TokenIssuer(TokenIssuer.RANDOM, List.of(), "", 60_000L, System::currentTimeMillis);
+
+    @Mock
+    private RequestLog requestLog;
+
+    // a mock, so the TransactionTemplate of the UserService runs its callbacks without a transaction
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
     @InjectMocks
     private UserService userService;
 
@@ -34,6 +73,7 @@ public class UserServiceTest {
 
         // when -> any object is being save in the userRepository -> return the dummy testUser
         Mockito.when(userRepository.save(Mockito.any())).thenReturn(testUser);
+        Mockito.when(passwordHasher.hashAll(Mockito.any())).thenAnswer(invocation -> invocation.getArgument(0));
     }
 
     @Test
@@ -76,5 +116,302 @@ public class UserServiceTest {
         assertThrows(ResponseStatusException.class, () -> userService.createUser(testUser));
     }
 
+    @Test
+    public void createUser_newUsername_noLookup() {
+        userService.createUser(testUser);
+
+        Mockito.verify(userRepository, Mockito.never()).findByUsername(Mockito.any());
+        assertTrue(usernameFilter.mightContain(testUser.getUsername()));
+    }
+
+    @Test
+    public void createUser_usernameConstraintViolated_conflict() {
+        Mockito.doThrow(new DataIntegrityViolationException("could not execute statement",
+                new ConstraintViolationException("Unique index or primary key violation", null,
+                        "PUBLIC." + User.USERNAME_CONSTRAINT + "_INDEX_2"))).when(userRepository).flush();
+
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class, () -> userService.createUser(testUser));
+        assertEquals(HttpStatus.CONFLICT, exception.getStatus());
+    }
+
+    @Test
+    public void createUser_password_storedAsHash() {
+        testUser.setPassword("password");
+        Mockito.when(passwordHasher.hash("password")).thenReturn("hash");
+
+        User createdUser = userService.createUser(testUser);
+
+        assertEquals("hash", createdUser.getPassword());
+    }
+
+    @Test
+    public void checkIfCredentialsExist_validCredentials_userOnline() {
+        testUser.setPassword("hash");
+        testUser.setStatus(UserStatus.OFFLINE);
+        User userInput = new User();
+        userInput.setUsername("testUsername");
+        userInput.setPassword("password");
+
+        Mockito.when(userRepository.findByUsername("testUsername")).thenReturn(testUser);
+        Mockito.when(passwordHasher.matches("password", "hash")).thenReturn(true);
+
+        User loggedInUser = userService.checkIfCredentialsExist(userInput);
+
+        assertEquals(UserStatus.ONLINE, loggedInUser.getStatus());
+        Mockito.verify(userRepository, Mockito.times(1)).findByUsername("testUsername");
+        Mockito.verify(presenceRegistry, Mockito.times(1)).setStatus(1L, UserStatus.ONLINE);
+    }
+
+    @Test
+    public void checkIfCredentialsExist_wrongPassword_throwsException() {
+        testUser.setPassword("hash");
+        User userInput = new User();
+        userInput.setUsername("testUsername");
+        userInput.setPassword("wrongPassword");
+
+        Mockito.when(userRepository.findByUsername("testUsername")).thenReturn(testUser);
+        Mockito.when(passwordHasher.matches("wrongPassword", "hash")).thenReturn(false);
+
+        assertThrows(ResponseStatusException.class, () -> userService.checkIfCredentialsExist(userInput));
+        // the failed login is logged without the password
+        Mockito.verify(requestLog, Mockito.times(1)).log("user.login.failed", "username", "testUsername");
+    }
+
+    @Test
+    public void checkIfCredentialsExist_unknownUser_throwsException() {
+        User userInput = new User();
+        userInput.setUsername("unknownUsername");
+        userInput.setPassword("password");
+
+        assertThrows(ResponseStatusException.class, () -> userService.checkIfCredentialsExist(userInput));
+        // verified against the dummy hash, as long as for a wrong password
+        Mockito.verify(passwordHasher, Mockito.times(1)).matches("password", null);
+    }
+
+    @Test
+    public void createUsers_takenAndDuplicateUsernames_notCreated() {
+        User takenUser = new User();
+        takenUser.setUsername("takenUsername");
+        takenUser.setPassword("password");
+        User newUser = new User();
+        newUser.setUsername("newUsername");
+        newUser.setPassword("password");
+        User duplicateUser = new User();
+        duplicateUser.setUsername("newUsername");
+        duplicateUser.setPassword("password");
+
+        usernameFilter.add("takenUsername");
+        Mockito.when(userRepository.findExistingUsernames(Mockito.any())).thenReturn(List.of("takenUsername"));
+
+        List<User> createdUsers = userService.createUsers(List.of(takenUser, newUser, duplicateUser));
+
+        assertNull(createdUsers.get(0));
+        assertSame(newUser, createdUsers.get(1));
+        assertNull(createdUsers.get(2));
+        assertNotNull(newUser.getToken());
+        assertEquals(UserStatus.OFFLINE, newUser.getStatus());
+        Mockito.verify(userRepository, Mockito.times(1)).findExistingUsernames(Mockito.any());
+        Mockito.verify(userRepository, Mockito.times(1)).saveAll(List.of(newUser));
+    }
+
+    @Test
+    public void createUsers_missingUsernameOrPassword_notCreatedNorHashed() {
+        User withoutUsername = new User();
+        withoutUsername.setPassword("password");
+        User withoutPassword = new User();
+        withoutPassword.setUsername("withoutPassword");
+        User newUser = new User();
+        newUser.setUsername("newUsername");
+        newUser.setPassword("password");
+
+        // a null element of the request, too
+        List<User> createdUsers = userService.createUsers(Arrays.asList(withoutUsername, withoutPassword, null, newUser));
+
+        assertNull(createdUsers.get(0));
+        assertNull(createdUsers.get(1));
+        assertNull(createdUsers.get(2));
+        assertSame(newUser, createdUsers.get(3));
+        Mockito.verify(passwordHasher, Mockito.times(1)).hashAll(List.of("password"));
+        Mockito.verify(userRepository, Mockito.times(1)).saveAll(List.of(newUser));
+    }
+
+    @Test
+    public void createUsers_tooManyUsers_throwsException() {
+        List<User> newUsers = Collections.nCopies(UserService.MAX_BULK_SIZE + 1, testUser);
+
+        assertThrows(ResponseStatusException.class, () -> userService.createUsers(newUsers));
+    }
+
+    @Test
+    public void getUsers_limitAboveMaximum_capped() {
+        userService.getUsers(10L, UserService.MAX_PAGE_SIZE + 1, null);
+
+        Mockito.verify(userRepository, Mockito.times(1))
+                .findByIdGreaterThanOrderByIdAsc(10L, PageRequest.of(0, UserService.MAX_PAGE_SIZE));
+    }
+
+    @Test
+    public void getUsers_withStatus_filteredQuery() {
+        userService.getUsers(null, null, UserStatus.ONLINE);
+
+        Mockito.verify(presenceRegistry, Mockito.times(1)).flush();
+        Mockito.verify(userRepository, Mockito.times(1))
+                .findByStatusAndIdGreaterThanOrderByIdAsc(UserStatus.ONLINE, 0L, PageRequest.of(0, UserService.DEFAULT_PAGE_SIZE));
+        // not read-only, so that the query runs on the primary, which has the flushed status changes
+        Mockito.verify(transactionManager, Mockito.times(1))
+                .getTransaction(Mockito.argThat(transaction -> !transaction.isReadOnly()));
+    }
+
+    @Test
+    public void getUsers_withFields_projectedQuery() {
+        User projectedUser = new User();
+        projectedUser.setId(1L);
+        Set<UserField> fields = EnumSet.of(UserField.USERNAME);
+        Mockito.when(userRepository.findProjectedByIdGreaterThan(fields, null, 0L, UserService.DEFAULT_PAGE_SIZE))
+                .thenReturn(List.of(projectedUser));
+
+        assertEquals(List.of(projectedUser), userService.getUsers(null, null, null, fields));
+
+        Mockito.verify(userRepository, Mockito.never()).findByIdGreaterThanOrderByIdAsc(Mockito.any(), Mockito.any());
+        Mockito.verify(presenceRegistry, Mockito.never()).applyTo(Mockito.any());
+    }
+
+    @Test
+    public void getUserWithId_withFields_notFound() {
+        Set<UserField> fields = EnumSet.of(UserField.STATUS);
+
+        assertThrows(ResponseStatusException.class, () -> userService.getUserWithId(1L, fields));
+    }
+
+    @Test
+    public void getUsersWithIds_maximumIds_oneQueryInOrder() {
+        List<Long> ids = new ArrayList<>();
+        for (long id = UserService.MAX_BATCH_SIZE; id > 0; id--) {
+            ids.add(id);
+        }
+        ids.add((long) UserService.MAX_BATCH_SIZE);
+        // every id but 1 exists
+        Mockito.when(userRepository.findAllById(Mockito.any())).thenAnswer(invocation -> {
+            List<User> users = new ArrayList<>();
+            for (Long id : invocation.<Iterable<Long>>getArgument(0)) {
+                if (id != 1L) {
+                    User user = new User();
+                    user.setId(id);
+                    users.add(user);
+                }
+            }
+            return users;
+        });
+
+        List<User> users = userService.getUsersWithIds(ids);
+
+        assertEquals(UserService.MAX_BATCH_SIZE - 1, users.size());
+        assertEquals((long) UserService.MAX_BATCH_SIZE, users.get(0).getId());
+        assertEquals(2L, users.get(UserService.MAX_BATCH_SIZE - 2).getId());
+        Mockito.verify(userRepository, Mockito.times(1)).findAllById(Mockito.any());
+        Mockito.verify(presenceRegistry, Mockito.times(UserService.MAX_BATCH_SIZE - 1)).applyTo(Mockito.any());
+    }
+
+    @Test
+    public void getUsersWithIds_invalidSize_throwsException() {
+        List<Long> ids = new ArrayList<>();
+        for (long id = 0; id <= UserService.MAX_BATCH_SIZE; id++) {
+            ids.add(id);
+        }
+
+        assertThrows(ResponseStatusException.class, () -> userService.getUsersWithIds(List.of()));
+        assertThrows(ResponseStatusException.class, () -> userService.getUsersWithIds(ids));
+    }
+
+    @Test
+    public void getUsers_invalidLimit_throwsException() {
+        assertThrows(ResponseStatusException.class, () -> userService.getUsers(null, 0, null));
+    }
+
+    @Test
+    public void authenticateToken_cachedToken_noLookup() {
+        tokenCache.put("token", 1L);
+
+        assertTrue(userService.authenticateToken("token"));
+
+        Mockito.verify(userRepository, Mockito.never()).findByToken(Mockito.any());
+    }
+
+    @Test
+    public void authenticateToken_validToken_cached() {
+        testUser.setToken("token");
+        Mockito.when(userRepository.findByToken("token")).thenReturn(testUser);
+
+        assertTrue(userService.authenticateToken("token"));
+
+        Mockito.verify(tokenCache, Mockito.times(1)).put("token", testUser.getId());
+    }
+
+    @Test
+    public void authenticateToken_invalidToken_throwsException() {
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class, () -> userService.authenticateToken("token"));
+
+        // the same exception for every rejection, without a stack trace
+        assertSame(UserError.TOKEN_INVALID.exception(), exception);
+        assertEquals(0, exception.getStackTrace().length);
+
+        Mockito.verify(tokenCache, Mockito.never()).put(Mockito.any(), Mockito.any());
+    }
+
+    @Test
+    public void authenticateToken_formerTestToken_throwsException() {
+        assertThrows(ResponseStatusException.class, () -> userService.authenticateToken("1"));
+    }
+
+    @Test
+    public void logOut_existingUser_tokenInvalidated() {
+        testUser.setToken("token");
+        Mockito.when(userRepository.findById(1L)).thenReturn(Optional.of(testUser));
+
+        User loggedOutUser = userService.logOut(1L);
+
+        assertEquals(UserStatus.OFFLINE, loggedOutUser.getStatus());
+        Mockito.verify(tokenCache, Mockito.times(1)).invalidate("token");
+        Mockito.verify(presenceRegistry, Mockito.times(1)).setStatus(1L, UserStatus.OFFLINE);
+        Mockito.verify(userRepository, Mockito.never()).save(Mockito.any());
+    }
+
+    private UserService signedTokenUserService(TokenIssuer signedTokenIssuer) {
+        return new UserService(userRepository, tokenCache, passwordHasher, null, presenceRegistry, usernameFilter,
+                signedTokenIssuer, requestLog, transactionManager);
+    }
+
+    @Test
+    public void authenticateToken_signedToken_noLookup() {
+        TokenIssuer signedTokenIssuer = new TokenIssuer(TokenIssuer.SIGNED, List.of(), "", 60_000L, System::currentTimeMillis);
+        UserService signedTokenUserService = signedTokenUserService(signedTokenIssuer);
+
+        assertTrue(signedTokenUserService.authenticateToken(signedTokenIssuer.issue(1L)));
+        assertThrows(ResponseStatusException.class, () -> signedTokenUserService.authenticateToken("1"));
+
+        Mockito.verify(userRepository, Mockito.never()).findByToken(Mockito.any());
+    }
+
+    @Test
+    public void logOut_signedToken_revoked() {
+        TokenIssuer signedTokenIssuer = new TokenIssuer(TokenIssuer.SIGNED, List.of(), "", 60_000L, System::currentTimeMillis);
+        UserService signedTokenUserService = signedTokenUserService(signedTokenIssuer);
+        testUser.setPassword("password");
+        Mockito.when(userRepository.findById(1L)).thenReturn(Optional.of(testUser));
+        Mockito.when(userRepository.findByUsername("testUsername")).thenReturn(testUser);
+        Mockito.when(passwordHasher.matches("password", "password")).thenReturn(true);
+        String token = signedTokenIssuer.issue(1L);
+
+        signedTokenUserService.logOut(1L);
+
+        assertThrows(ResponseStatusException.class, () -> signedTokenUserService.authenticateToken(token));
+        // logging in again issues a new token
+        User userInput = new User();
+        userInput.setUsername("testUsername");
+        userInput.setPassword("password");
+        String newToken = signedTokenUserService.checkIfCredentialsExist(userInput).getToken();
+        assertNotEquals(token, newToken);
+        assertTrue(signedTokenUserService.authenticateToken(newToken));
+    }
 
 }
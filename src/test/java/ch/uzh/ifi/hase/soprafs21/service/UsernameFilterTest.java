@@ -0,0 +1,55 @@
+package ch.uzh.ifi.hase.soprafs21.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UsernameFilterTest {
+
+    private UsernameFilter usernameFilter;
+
+    @BeforeEach
+    public void setup() {
+        usernameFilter = new UsernameFilter(100, 0.01);
+    }
+
+    @Test
+    public void mightContain_addedUsername_true() {
+        usernameFilter.add("username");
+
+        assertTrue(usernameFilter.mightContain("username"));
+        assertEquals(1, usernameFilter.getSize());
+    }
+
+    @Test
+    public void mightContain_newUsername_lookupSkipped() {
+        assertFalse(usernameFilter.mightContain("username"));
+        assertEquals(1, usernameFilter.getSkippedLookupCount());
+    }
+
+    @Test
+    public void add_moreThanExpected_growsWithoutFalseNegatives() {
+        for (int i = 0; i < 1000; i++) {
+            usernameFilter.add("username" + i);
+        }
+
+        assertTrue(usernameFilter.getLayerCount() > 1);
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(usernameFilter.mightContain("username" + i));
+        }
+        // each layer keeps roughly the configured false positive rate
+        int falsePositives = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (usernameFilter.mightContain("other" + i)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 100);
+    }
+
+    @Test
+    public void create_invalidFalsePositiveRate_throwsException() {
+        assertThrows(IllegalArgumentException.class, () -> new UsernameFilter(100, 1.0));
+    }
+}
@@ -0,0 +1,71 @@
+package ch.uzh.ifi.hase.soprafs21.startup;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
+import org.springframework.boot.context.metrics.buffering.StartupTimeline;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HibernateBootstrapTimerTest {
+
+    private final BufferingApplicationStartup applicationStartup = new BufferingApplicationStartup(100);
+
+    private HibernateBootstrapTimer newTimer() {
+        ConfigurableApplicationContext context = Mockito.mock(ConfigurableApplicationContext.class);
+        Mockito.when(context.getApplicationStartup()).thenReturn(applicationStartup);
+        return new HibernateBootstrapTimer(context);
+    }
+
+    private List<StartupTimeline.TimelineEvent> getBootstrapSteps() {
+        return applicationStartup.getBufferedTimeline().getEvents().stream()
+                .filter(event -> HibernateBootstrapTimer.BOOTSTRAP_STEP.equals(event.getStartupStep().getName()))
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void postProcessBeforeInitialization_bootstrapExecutor_taskTimed() throws Exception {
+        LocalContainerEntityManagerFactoryBean factoryBean = new LocalContainerEntityManagerFactoryBean();
+        factoryBean.setBootstrapExecutor(new SimpleAsyncTaskExecutor());
+
+        newTimer().postProcessBeforeInitialization(factoryBean, "entityManagerFactory");
+        // submitted like the bootstrap of the factory bean, the step starts when the task runs
+        assertEquals("bootstrapped", factoryBean.getBootstrapExecutor().submit(() -> {
+            Thread.sleep(20);
+            return "bootstrapped";
+        }).get());
+
+        List<StartupTimeline.TimelineEvent> steps = getBootstrapSteps();
+        assertEquals(1, steps.size());
+        assertTrue(steps.get(0).getDuration().compareTo(Duration.ofMillis(20)) >= 0);
+    }
+
+    @Test
+    public void postProcessAfterInitialization_withoutBootstrapExecutor_initializationTimed() {
+        LocalContainerEntityManagerFactoryBean factoryBean = new LocalContainerEntityManagerFactoryBean();
+        HibernateBootstrapTimer timer = newTimer();
+
+        timer.postProcessBeforeInitialization(factoryBean, "entityManagerFactory");
+        assertTrue(getBootstrapSteps().isEmpty());
+        timer.postProcessAfterInitialization(factoryBean, "entityManagerFactory");
+
+        assertEquals(1, getBootstrapSteps().size());
+    }
+
+    @Test
+    public void postProcessBeforeInitialization_otherBean_notTimed() {
+        HibernateBootstrapTimer timer = newTimer();
+
+        timer.postProcessBeforeInitialization("userService", "userService");
+        timer.postProcessAfterInitialization("userService", "userService");
+
+        assertTrue(getBootstrapSteps().isEmpty());
+    }
+}
@@ -0,0 +1,69 @@
+package ch.uzh.ifi.hase.soprafs21.startup;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
+import org.springframework.boot.context.metrics.buffering.StartupTimeline;
+import org.springframework.core.metrics.StartupStep;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StartupTimelineReporterTest {
+
+    private final BufferingApplicationStartup applicationStartup = new BufferingApplicationStartup(100);
+
+    private void instantiate(String beanName) {
+        StartupStep step = applicationStartup.start("spring.beans.instantiate");
+        step.tag("beanName", beanName);
+        step.end();
+    }
+
+    @Test
+    public void getPhases_stepsOfTheTimeline_addedUpPerPhase() {
+        StartupStep refresh = applicationStartup.start("spring.context.refresh");
+        applicationStartup.start("spring.context.config-classes.parse").end();
+        applicationStartup.start("spring.context.config-classes.parse").end();
+        // the instantiation of the entity manager factory only submits the bootstrap in the deferred mode
+        instantiate("entityManagerFactory");
+        applicationStartup.start(HibernateBootstrapTimer.BOOTSTRAP_STEP).end();
+        instantiate("userService");
+        applicationStartup.start(StartupTimelineReporter.MAPSTRUCT_LOAD_STEP).end();
+        refresh.end();
+        StartupTimeline timeline = applicationStartup.getBufferedTimeline();
+
+        Map<String, Duration> phases = StartupTimelineReporter.getPhases(timeline, timeline.getStartTime().minusMillis(500));
+
+        assertEquals(List.of("jvm start", "configuration classes", "hibernate bootstrap", "mapstruct load", "context refresh"),
+                List.copyOf(phases.keySet()));
+        assertEquals(Duration.ofMillis(500), phases.get("jvm start"));
+        assertTrue(phases.get("context refresh").compareTo(phases.get("hibernate bootstrap")) >= 0);
+    }
+
+    @Test
+    public void getPhases_emptyTimeline_onlyJvmStart() {
+        StartupTimeline timeline = applicationStartup.getBufferedTimeline();
+
+        Map<String, Duration> phases = StartupTimelineReporter.getPhases(timeline, Instant.EPOCH);
+
+        assertEquals(List.of("jvm start"), List.copyOf(phases.keySet()));
+    }
+
+    @Test
+    public void getSlowestBeans_moreBeansThanCount_slowestFirst() throws InterruptedException {
+        StartupStep slow = applicationStartup.start("spring.beans.instantiate");
+        slow.tag("beanName", "slow");
+        Thread.sleep(20);
+        slow.end();
+        instantiate("fast");
+        instantiate("faster");
+
+        Map<String, Duration> beans = StartupTimelineReporter.getSlowestBeans(applicationStartup.getBufferedTimeline(), 2);
+
+        assertEquals(2, beans.size());
+        assertEquals("slow", beans.keySet().iterator().next());
+    }
+}